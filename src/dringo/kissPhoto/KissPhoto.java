@@ -2,6 +2,7 @@ package dringo.kissPhoto;
 
 import dringo.kissPhoto.helper.GlobalSettings;
 import dringo.kissPhoto.helper.I18Support;
+import dringo.kissPhoto.model.ThumbnailCache;
 import dringo.kissPhoto.view.*;
 import dringo.kissPhoto.view.dialogs.ExternalEditorsDialog;
 import javafx.application.Application;
@@ -13,6 +14,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.SplitPane;
 import javafx.scene.image.Image;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.VBox;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import mediautil.gen.Log;
@@ -112,6 +114,7 @@ public class KissPhoto extends Application {
   private FileTableView fileTableView;
   private MediaContentView mediaContentView;
   private MetaInfoView metaInfoView;
+  private FilmStripView filmStripView;
   private StatusBar statusBar;
 
   //all classes can access the settings file
@@ -221,10 +224,11 @@ static private boolean isOption(String arg){
     fileTableView = new FileTableView(mediaContentView, metaInfoView, statusBar, primaryStage); //File table and directory
     statusBar.connectUndeleteDialog(fileTableView);
     mediaContentView.setOtherViews(fileTableView, metaInfoView);
+    filmStripView = new FilmStripView(fileTableView); //thumbnails of the files in fileTableView
     metaInfoView.setOtherViews(fileTableView, mediaContentView, statusBar);
 
 
-    MainMenuBar mainMenuBar = new MainMenuBar(fileTableView, mediaContentView, metaInfoView, primaryStage);
+    MainMenuBar mainMenuBar = new MainMenuBar(fileTableView, mediaContentView, metaInfoView, filmStripView, primaryStage);
     mainMenuBar.addRecentlyMenu(fileTableView.getFileHistory().getRecentlyFilesMenu());
     // Left and right split pane
     mainSplitPane.prefWidthProperty().bind(scene.widthProperty());
@@ -247,7 +251,7 @@ static private boolean isOption(String arg){
 
     rootArea.setTop(mainMenuBar);
     rootArea.setCenter(mainSplitPane);
-    rootArea.setBottom(statusBar);
+    rootArea.setBottom(new VBox(filmStripView, statusBar));
     root.getChildren().add(rootArea);
 
 
@@ -285,6 +289,7 @@ static private boolean isOption(String arg){
   public final void stop() {
     //release all external resources e.g. VLC.dll
     mediaContentView.cleanUp();
+    ThumbnailCache.closeInstance();
   }
 
   /**
@@ -305,6 +310,7 @@ static private boolean isOption(String arg){
     globalSettings.setProperty(MAIN_SPLIT_PANE_DIVIDER_POSITION, Double.toString(mainSplitPane.getDividerPositions()[0]));
 
     metaInfoView.storeVisibilityInGlobalSettings();
+    filmStripView.storeVisibilityInGlobalSettings();
     fileTableView.storeLastSettings();
   }
 
@@ -355,6 +361,7 @@ static private boolean isOption(String arg){
 
 
     fileTableView.restoreLastSettings();
+    filmStripView.restoreVisibilityFromGlobalSettings();
     Platform.runLater(()->metaInfoView.restoreVisibilityFromGlobalSettings()); //wait until all other layout has been performed otherwise metaInfoView gets a resize event after original position was restored
   }
 
@@ -1,8 +1,9 @@
 package dringo.kissPhoto.ctrl;
 
-import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * MIT License
@@ -16,69 +17,56 @@ import java.nio.file.Path;
  *
  * @author Dringo
  * @since 2012-09-02
+ * @version 2026-10-17: the filenames are passed by MediaFileList.openFolder() instead of listing the folder again, up to SAMPLE_SIZE names vote for the position
  * @version 2020-12-20: bug fixing with string compare
  * @version 2014-06-05: java.nio used (except conversion to file array)
  * @version 2014-06-04: ik: bug fix: the first files have been used (might be dirs) instead of the the found fileNames (which are files) More robust (null/not exist, ...)
  * @version 2014-05-11: ik: if the 2-file heuristic does not find counter return 1-file heuristic
  */
 public class CounterPositionHeuristic {
-
+  public static final int SAMPLE_SIZE = 16; //number of filenames investigated by guessCounterPosition(List)
 
   /**
-   * Guess the files' counter position by investigating a folder:
+   * Guess the files' counter position by investigating the first filenames of a folder:
    * <ul>
    * <li>if there is no file in the folder guess 0 (prefix)</li>
    * <li>if there is one file in the folder use heuristic with one filename parameter (see below)</li>
-   * <li>if there are more than one files in the folder use heuristic with two filename parameters (see below)</li>
+   * <li>if there are more files in the folder the first SAMPLE_SIZE filenames are sorted and every pair of neighbours
+   * is investigated with the heuristic with two filename parameters (see below). The most frequent position wins
+   * (the smaller one if equally frequent), so that a few differently named files (e.g. "Thumbs.db") do not spoil the guess.
+   * If no pair finds a counter the heuristic with one filename parameter is used for the first filename</li>
    * </ul>
-   * For convenience: if the folder is a file: the heuristic with on filename parameter is called
+   * The filenames are passed by the caller (e.g. the first entries read by MediaFileList.openFolder()),
+   * so that the folder is not read just for the heuristic
    *
-   * @param folder is the folder to be investigated
+   * @param fileNames names of the files (no directories) in the folder in the order read from disk
    * @return the guessed counter position ("nth number is the counter")
    */
-  public int guessCounterPosition(Path folder) {
-    final int MAXFILENAMES = 2; //currently only the first two filenames are investigated
-
-    if (folder == null) return 0;
-
-    Path directory = folder;
-    if (Files.isRegularFile(folder))
-      directory = directory.getParent();
-
-
-    if (Files.exists(directory)) {
-      File[] files = directory.toFile().listFiles();
-      if (files == null) return 0;
+  public int guessCounterPosition(List<String> fileNames) {
+    if (fileNames == null || fileNames.isEmpty()) return 0; //default is 0 = prefix
 
-      String[] fileNames = new String[MAXFILENAMES];
+    List<String> sample = new ArrayList<>(fileNames.subList(0, Math.min(SAMPLE_SIZE, fileNames.size())));
+    if (sample.size() == 1) return guessCounterPosition(sample.get(0));
+    sample.sort(null); //neighbours are most likely consecutive numbers
 
-      //find the first two fileNames
-      int i = 0;
-      int found = 0;
-      while (i < files.length && found < MAXFILENAMES) {
-        if (!files[i].isDirectory()) {
-          fileNames[found] = files[i].getName();
-          found++;
-        }
-        i++;
-      }
+    Map<Integer, Integer> votes = new HashMap<>();
+    for (int i = 1; i < sample.size(); i++) {
+      int pos = guessCounterPosition(sample.get(i - 1), sample.get(i));
+      if (pos > 0) votes.merge(pos, 1, Integer::sum);
+    }
 
-      if (found == 0) {
-        return 0; //default is 0 = prefix
-      } else {
-        if (found == 1) {
-          return guessCounterPosition(fileNames[0]);
-        } else {   //found = 2
-          i = guessCounterPosition(fileNames[0], fileNames[1]);
-          if (i == 0) //the 2 file heuristic was not successful try the 1 file heuristic
-            i = guessCounterPosition(fileNames[0]);
-
-          return i;
-        }
+    int bestPos = 0;
+    int bestVotes = 0;
+    for (Map.Entry<Integer, Integer> vote : votes.entrySet()) {
+      if (vote.getValue() > bestVotes || (vote.getValue() == bestVotes && vote.getKey() < bestPos)) {
+        bestPos = vote.getKey();
+        bestVotes = vote.getValue();
       }
     }
+    if (bestPos == 0) //the 2 file heuristic was not successful try the 1 file heuristic
+      bestPos = guessCounterPosition(sample.get(0));
 
-    return 0; //as a default
+    return bestPos;
   }
 
   /**
@@ -3,7 +3,15 @@ package dringo.kissPhoto.ctrl;
 import javafx.application.Platform;
 import javafx.concurrent.Task;
 
+import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.StandardWatchEventKinds.*;
 
@@ -14,16 +22,28 @@ import static java.nio.file.StandardWatchEventKinds.*;
  * A thread uses a FileSystem.WatchService
  * to monitor if files if a directory have been changed externally
  * <p/>
+ * The events are coalesced before they are passed to the listener: after an event the thread waits until the folder has been quiet
+ * for DEBOUNCE_MILLIS (but not longer than MAX_DELAY_MILLIS while events keep coming), the events are de-duplicated per filename
+ * and the whole batch is passed to the listener in one call, e.g. a camera import of 2000 files results in a few calls only
+ * <p/>
+ * If events have been lost (OVERFLOW) or after continueWatching() the listener gets a snapshot of the folder's attributes instead,
+ * so that it can apply the differences to its state (reconciliation) instead of reopening the folder
+ * <p/>
  * This class is based on a solution found on com.thecoderscorner.niostuff;
  *
  * @author Dringo
  * @since 2014-05-04
+ * @version 2026-10-17 snapshot of the folder after OVERFLOW and after pausing (reconciliation)
+ * @version 2026-10-17 all events are signalled: debounced, de-duplicated per filename and passed in batches
  * @version 2020-11-29 code clean up
  * @version 2014-06-08 folder update is toooooo slow. Just a message is given to the user...that reopen could help...: not all events are signalled!!!
  * @version 2014-06-06 Thread handling improved: Thread.interrupt to stop thread and Watcher created in the thread
  */
 
 public class FileChangeWatcher {
+  private static final long DEBOUNCE_MILLIS = 300;    //a batch is passed to the listener if there was no event for this time
+  private static final long MAX_DELAY_MILLIS = 2000;  //...but latest after this time, also if events keep coming
+
   private Thread fileWatcherThread;
   private MyWatchQueueReader queueReader;
 
@@ -43,6 +63,15 @@ public class FileChangeWatcher {
    * @param listener    a class implementing FilechangeWatcherEventListener-interface to receive "onFolderChanged"Events
    */
   public void registerFolderToWatch(String pathToWatch, FileChangeWatcherEventListener listener) {
+    startWatcherThread(pathToWatch, listener, false);
+  }
+
+  /**
+   * see registerFolderToWatch()
+   *
+   * @param snapshotOnStart if true the listener gets a snapshot of the folder as soon as the folder is watched (see onFolderSnapshot())
+   */
+  private void startWatcherThread(String pathToWatch, FileChangeWatcherEventListener listener, boolean snapshotOnStart) {
     //stop watcher threads started before
     stopWatcherThread();
 
@@ -50,7 +79,7 @@ public class FileChangeWatcher {
     Path toWatch = Paths.get(pathToWatch);
 
     // start the file watcher thread below
-    queueReader = new MyWatchQueueReader(toWatch, listener);
+    queueReader = new MyWatchQueueReader(toWatch, listener, snapshotOnStart);
     fileWatcherThread = new Thread(queueReader, "FileWatcher");
     fileWatcherThread.setDaemon(true); //close when main task is closed
     fileWatcherThread.start();
@@ -92,11 +121,12 @@ public class FileChangeWatcher {
 
   /**
    * set internal state for no longer ignoring changes in the folder after pause
-   * watch events will produce onChanged - Events again
+   * watch events will produce onChanged - Events again.
+   * The changes while paused are unknown: the listener gets a snapshot of the folder (see onFolderSnapshot())
    */
   public void continueWatching() {
     try {
-      registerFolderToWatch(lastPathToWatch, lastListener);
+      startWatcherThread(lastPathToWatch, lastListener, true);
     } catch (Exception e) {
       //ignore exceptions while registering
     }
@@ -112,18 +142,58 @@ public class FileChangeWatcher {
     return queueReader.paused;
   }
 
+  /**
+   * merge the kind of a new event for a file into the kind of the events collected before for the same file
+   *
+   * @param previous kind of the collected events, null if none
+   * @param next     kind of the new event
+   * @return the resulting kind or null if the events cancel each other out (created and deleted again)
+   */
+  public static WatchEvent.Kind<?> mergeKinds(WatchEvent.Kind<?> previous, WatchEvent.Kind<?> next) {
+    if (previous == ENTRY_CREATE && next == ENTRY_MODIFY) return ENTRY_CREATE; //still new, with its final content
+    if (previous == ENTRY_CREATE && next == ENTRY_DELETE) return null;         //temporary file: never existed for the listener
+    if (previous == ENTRY_DELETE && next == ENTRY_CREATE) return ENTRY_MODIFY; //replaced by a new file
+    return next;
+  }
+
+  /**
+   * read the attributes of all regular, not hidden files of a folder.
+   * The attributes are read together with the directory entries (e.g. on Windows) instead of accessing every file separately
+   *
+   * @param folder the folder to be read
+   * @return filename (without path) and its attributes
+   * @throws IOException if the folder cannot be read
+   */
+  public static Map<String, BasicFileAttributes> readFolderSnapshot(Path folder) throws IOException {
+    Map<String, BasicFileAttributes> snapshot = new HashMap<>();
+    Files.walkFileTree(folder, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+        //Windows: hidden is an attribute (already read), other OS: hidden means starting with a dot
+        boolean hidden = (attributes instanceof DosFileAttributes dosAttributes) ? dosAttributes.isHidden() : Files.isHidden(file);
+        if (attributes.isRegularFile() && !hidden)
+          snapshot.put(file.getFileName().toString(), attributes);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        return FileVisitResult.CONTINUE; //e.g. deleted in the meantime: skip it
+      }
+    });
+    return snapshot;
+  }
+
   /**
    * This Runnable is used to constantly attempt to take from the watch
    * queue, and will receive all events that are registered with the
-   * fileWatcher it is associated. In this sample for simplicity we
-   * just output the kind of event and name of the file affected to
-   * standard out.
+   * fileWatcher it is associated. The events are collected (see mergeKinds()) until the folder is quiet
+   * and then passed to the listener in one call in the FX application thread
    */
   private static class MyWatchQueueReader extends Task<Void> {
     private final FileChangeWatcherEventListener listener;
     private final Path pathToWatch;
-    private String currentFilename;
-    private WatchEvent.Kind<?> currentKind;
+    private final boolean snapshotOnStart;
     protected boolean paused = false;
 
     /**
@@ -131,9 +201,10 @@ public class FileChangeWatcher {
      */
     private WatchService watcher;
 
-    public MyWatchQueueReader(Path toWatch, FileChangeWatcherEventListener listener) {
+    public MyWatchQueueReader(Path toWatch, FileChangeWatcherEventListener listener, boolean snapshotOnStart) {
       this.pathToWatch = toWatch;
       this.listener = listener;
+      this.snapshotOnStart = snapshotOnStart;
     }
 
     /**
@@ -150,28 +221,34 @@ public class FileChangeWatcher {
         watcher = pathToWatch.getFileSystem().newWatchService();
         // register the directory
         pathToWatch.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE, OVERFLOW);
+        //registered first: no change gets lost between the snapshot and the events
+        if (snapshotOnStart && !paused) signalSnapshot();
 
         // get the first event before looping
         WatchKey key = watcher.take();  //wait for event
 
         while (key != null) {
-          // we have a polled event, now we traverse it and
-          // receive all the states from it
-          //for (WatchEvent event : key.pollEvents()) {
-          WatchEvent<?> event = key.pollEvents().get(0); //signal just the first event
-          currentFilename = event.context().toString();
-          currentKind = event.kind();
+          //collect events until the folder is quiet (debounce)
+          Map<String, WatchEvent.Kind<?>> changes = new LinkedHashMap<>();
+          boolean overflow = false;
+          long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+          do {
+            overflow |= collectEvents(key, changes);
+            key.reset();
+            long remaining = deadline - System.currentTimeMillis();
+            key = (remaining > 0) ? watcher.poll(Math.min(remaining, DEBOUNCE_MILLIS), TimeUnit.MILLISECONDS) : null;
+          } while (key != null);
 
           //access FXApplication Thread only via Platform.runLater (see tutorial from oracle about Task)
           //produce events only while not paused = while paused ignore events (consume them)
-          if (!paused) Platform.runLater(() -> {
-            listener.onFolderChanged(currentFilename, currentKind); //the event object is new every time from key.pollEvents()
-          });
-          //Thread.sleep(50); //give the listener a chance to process events before waiting for the next event
-          //}
-          key.reset();
-
-          //Thread.sleep(50); //give the listener a chance to process events before waiting for the next event
+          //after an overflow the collected changes are incomplete: the snapshot (taken after them) replaces them
+          if (!paused) {
+            if (overflow)
+              signalSnapshot();
+            else if (!changes.isEmpty())
+              Platform.runLater(() -> listener.onFolderChanged(changes));
+          }
+
           key = watcher.take(); //wait for next event
           if (isCancelled()) break;
         }
@@ -182,5 +259,41 @@ public class FileChangeWatcher {
       }
       return null;
     }
+
+    /**
+     * read the folder in this thread and pass the snapshot to the listener
+     */
+    private void signalSnapshot() {
+      try {
+        Map<String, BasicFileAttributes> snapshot = readFolderSnapshot(pathToWatch);
+        Platform.runLater(() -> listener.onFolderSnapshot(snapshot));
+      } catch (IOException e) {
+        //folder not readable (e.g. deleted): nothing to compare with
+      }
+    }
+
+    /**
+     * add the events of the key to changes: one entry per filename with the merged kind of all its events
+     *
+     * @param key     the signalled key
+     * @param changes the collected changes
+     * @return true if events have been lost (OVERFLOW)
+     */
+    private boolean collectEvents(WatchKey key, Map<String, WatchEvent.Kind<?>> changes) {
+      boolean overflow = false;
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) { //events have been lost: there is no filename
+          overflow = true;
+          continue;
+        }
+        String filename = event.context().toString();
+        WatchEvent.Kind<?> kind = mergeKinds(changes.get(filename), event.kind());
+        if (kind == null)
+          changes.remove(filename);
+        else
+          changes.put(filename, kind);
+      }
+      return overflow;
+    }
   }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package dringo.kissPhoto.ctrl;
 
 import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
 
 /**
  * MIT License
@@ -11,8 +13,24 @@ import java.nio.file.WatchEvent;
  *
  * @author Dringo
  * @since 2014-05-04 Created by Ingo on 04.05.2014.
+ * @version 2026-10-17 onFolderSnapshot() if events have been lost or not watched
+ * @version 2026-10-17 events are passed in batches: one entry per filename
  * @version 2014-06-06 Watch Event parameter splitted into filename and kind (otherwise the user would have to do it each time)
  */
 public interface FileChangeWatcherEventListener {
-  public void onFolderChanged(String filename, WatchEvent.Kind kind);
+  /**
+   * called in the FX application thread with all changes collected since the last call
+   *
+   * @param changes filename (without path) and kind (ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE) in the order of the first event for the file
+   */
+  public void onFolderChanged(Map<String, WatchEvent.Kind<?>> changes);
+
+  /**
+   * called in the FX application thread instead of onFolderChanged() if the changes are unknown:
+   * events have been lost (OVERFLOW, e.g. thousands of files copied into the folder) or watching has been paused.
+   * The listener should compare the snapshot with its state and apply the differences
+   *
+   * @param snapshot filename (without path) and attributes of all regular, not hidden files of the folder
+   */
+  public void onFolderSnapshot(Map<String, BasicFileAttributes> snapshot);
 }
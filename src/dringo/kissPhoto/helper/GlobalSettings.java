@@ -26,6 +26,7 @@ import java.util.Properties;
  * <p/>
  * @author Dringo
  * @since 2013-10-09
+ * @version 2026-10-17 getSettingsDirectory() for other persistent data
  * @version 2020-11-06 changed to XML format to support UTF-8 encoding
  *
  */
@@ -34,6 +35,7 @@ public class GlobalSettings extends Properties {
   private static final String PROPERTIES_FILENAME = "kissPhoto.settings";
 
   private final String propertiesFilename;
+  private final Path settingsDirectory;
 
 
   public GlobalSettings() {
@@ -41,6 +43,7 @@ public class GlobalSettings extends Properties {
     //determine the settings-path on this OS
     Path folderPath = getOSUserSettingsDirectory(); //is never null
     Path propertiesFilePath = folderPath.resolve(PROPERTIES_FOLDERNAME);
+    settingsDirectory = propertiesFilePath;
 
     try { //ignore IO-Exceptions
 
@@ -81,6 +84,13 @@ public class GlobalSettings extends Properties {
     }
   }
 
+  /**
+   * @return the directory where kissPhoto stores its settings (and other persistent data like the thumbnail cache)
+   */
+  public Path getSettingsDirectory() {
+    return settingsDirectory;
+  }
+
   public static Path getOSUserSettingsDirectory()
   {
     String appdataPath;
@@ -0,0 +1,206 @@
+package dringo.kissPhoto.model;
+
+import mediautil.gen.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * <br>
+ * Replaces the content of a file in a crash safe way: the original file is never opened for writing
+ * <ul>
+ * <li>the new content is written into a temporary file in the same folder (i.e. on the same drive) via a large direct buffer</li>
+ * <li>the temporary file is forced to disk (fsync) and gets the time stamps, permissions (POSIX or ACL), owner and
+ * extended attributes of the original file, so that the replaced file looks like the original one with new content</li>
+ * <li>then it is moved atomically over the original file (if the file system does not support atomic moves it is just replaced)</li>
+ * </ul>
+ * A read-only file is not replaced (AccessDeniedException), as it could not have been overwritten either.
+ * Symbolic links are followed: the file they point to is replaced and the link is kept.
+ * Hard links are split: the other names of the file keep the old content, as a new file is moved into place
+ * If anything fails the original file remains unchanged and the temporary file is deleted.
+ * If kissPhoto crashes in between, either the old or the new file is there (and possibly a temporary file *.kissPhoto.tmp)
+ * <p>
+ * The throughput of every file is printed if Log.debugLevel is LEVEL_DEBUG
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public class FileRewriter {
+  private static final String TEMP_EXTENSION = ".kissPhoto.tmp";
+  private static final int BUFFER_SIZE = 1 << 20; //1MB: few large writes, especially on network drives
+
+  /**
+   * writes the new content of a file, see replace()
+   */
+  @FunctionalInterface
+  public interface ContentWriter {
+    /**
+     * @param out the channel of the temporary file. Use FileRewriter.newOutputStream(out) for stream based writing
+     */
+    void write(FileChannel out) throws Exception;
+  }
+
+  /**
+   * replace the content of a file by the content written by writer
+   *
+   * @param file   the file to be replaced. If it is a symbolic link, the file it points to is replaced
+   * @param writer writes the new content
+   * @throws Exception if writing or replacing fails (or the file is read-only). Then the file is unchanged and the temporary file is deleted
+   */
+  public static void replace(Path file, ContentWriter writer) throws Exception {
+    long start = System.nanoTime();
+    if (!Files.isWritable(file)) throw new AccessDeniedException(file.toString(), null, "file is read-only");
+    file = file.toRealPath(); //follow symbolic links, so that the link itself is not replaced by a regular file
+    Path tempFile = file.resolveSibling(file.getFileName() + TEMP_EXTENSION);
+    BasicFileAttributes originalAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long size;
+    try {
+      try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        writer.write(out);
+        size = out.position();
+        out.force(true); //on disk before the original is replaced
+      }
+      //the new file is the old one with new content: keep all its time stamps (kissPhoto keeps the modified date of transformed files anyway)
+      copyAttributes(file, tempFile);
+      Files.getFileAttributeView(tempFile, BasicFileAttributeView.class).setTimes(
+        originalAttributes.lastModifiedTime(), originalAttributes.lastAccessTime(), originalAttributes.creationTime());
+
+      try {
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (Exception e) {
+      Files.deleteIfExists(tempFile);
+      throw e;
+    }
+    forceDirectory(file.getParent());
+
+    if (Log.debugLevel >= Log.LEVEL_DEBUG) {
+      long nanos = Math.max(1, System.nanoTime() - start);
+      System.out.println("FileRewriter: " + file.getFileName() + " " + size / 1024 + " KB in " + nanos / 1_000_000 + " ms ("
+        + String.format("%.1f", size * 1000.0 / nanos) + " MB/s)");
+    }
+  }
+
+  /**
+   * copy permissions, owner and extended attributes of the original file to the temporary file (as far as the file system supports them).
+   * Setting the owner is only possible with according rights: it is just tried
+   *
+   * @param original the file to be replaced
+   * @param tempFile the new file
+   * @throws IOException if the permissions cannot be copied
+   */
+  private static void copyAttributes(Path original, Path tempFile) throws IOException {
+    FileStore fileStore = Files.getFileStore(original);
+
+    if (fileStore.supportsFileAttributeView(PosixFileAttributeView.class)) {
+      PosixFileAttributes posixAttributes = Files.readAttributes(original, PosixFileAttributes.class);
+      PosixFileAttributeView tempView = Files.getFileAttributeView(tempFile, PosixFileAttributeView.class);
+      try {
+        tempView.setGroup(posixAttributes.group());
+        tempView.setOwner(posixAttributes.owner());
+      } catch (IOException e) {
+        //not allowed (e.g. the file belongs to another user): the new file belongs to the current user
+      }
+      tempView.setPermissions(posixAttributes.permissions()); //after the owner: changing the owner might reset special bits
+    }
+
+    if (fileStore.supportsFileAttributeView(DosFileAttributeView.class)) { //read-only is not copied: such files are not replaced
+      DosFileAttributes dosAttributes = Files.readAttributes(original, DosFileAttributes.class);
+      DosFileAttributeView tempView = Files.getFileAttributeView(tempFile, DosFileAttributeView.class);
+      tempView.setHidden(dosAttributes.isHidden());
+      tempView.setSystem(dosAttributes.isSystem());
+      tempView.setArchive(dosAttributes.isArchive());
+    }
+
+    if (fileStore.supportsFileAttributeView(AclFileAttributeView.class)) {
+      Files.getFileAttributeView(tempFile, AclFileAttributeView.class)
+        .setAcl(Files.getFileAttributeView(original, AclFileAttributeView.class).getAcl());
+    }
+
+    if (fileStore.supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+      UserDefinedFileAttributeView originalView = Files.getFileAttributeView(original, UserDefinedFileAttributeView.class);
+      UserDefinedFileAttributeView tempView = Files.getFileAttributeView(tempFile, UserDefinedFileAttributeView.class);
+      for (String name : originalView.list()) {
+        ByteBuffer value = ByteBuffer.allocate(originalView.size(name));
+        originalView.read(name, value);
+        value.flip();
+        tempView.write(name, value);
+      }
+    }
+  }
+
+  /**
+   * make the rename durable (if supported: not on Windows where directories cannot be opened)
+   */
+  private static void forceDirectory(Path directory) {
+    if (directory == null) return;
+    try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException | UnsupportedOperationException e) {
+      //nothing to do: the file has been replaced anyway
+    }
+  }
+
+  /**
+   * @param out the channel to write to
+   * @return an OutputStream writing to out via a large direct buffer. Closing the stream flushes it but does not close the channel
+   */
+  public static OutputStream newOutputStream(FileChannel out) {
+    return new OutputStream() {
+      private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+      @Override
+      public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) flush();
+        buffer.put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          if (!buffer.hasRemaining()) flush();
+          int n = Math.min(len, buffer.remaining());
+          buffer.put(b, off, n);
+          off += n;
+          len -= n;
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+          out.write(buffer);
+        buffer.clear();
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+  }
+}
@@ -2,25 +2,31 @@ package dringo.kissPhoto.model;
 
 import com.drew.metadata.exif.ExifIFD0Directory;
 import dringo.kissPhoto.KissPhoto;
+import dringo.kissPhoto.view.mediaViewers.ImageDecodeScheduler;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.collections.ObservableList;
 import javafx.scene.image.Image;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 
 /**
  * MIT License
  * Copyright (c)2021 kissPhoto
  *
  * This is a special MediaFile, namely an image.
- * As a content in getCachedMediaContent() it delivers an Image-Object which will be loaded in background
+ * As a content in getCachedMediaContent() it delivers a DecodeTask which loads the Image in background (see ImageDecodeScheduler)
  * It allows access to the Metadata (Exif, IPTC-Tags, ...)
  * ImageFile supports lossless rotation (90 degrees wise) and flipping of jpg-Images
  * <p/>
  *
  * @author Dringo
  * @since 2012-08-28
+ * @version 2026-10-17 cached content is now a DecodeTask of ImageDecodeScheduler instead of a background loading Image
+ * @version 2026-10-17 exact content size for the cache's byte budget
+ * @version 2026-10-17 constructor takes lastModified from folder scan
  * @version 2024-10-06 code made clearer (cachedContent renamed)
  * @version 2020-12-20 the according viewer determines now what to put in the cache (i.e. helps the viewer to show quickly)
  * @version 2020-11-19 globalSettings is now global (static in Kissphoto)
@@ -41,24 +47,36 @@ public class ImageFile extends MediaFileTaggedEditable {
   private final static int LEFT_BOTTOM = 8;   //        90°:The 0th row is the visual left-hand side of the image, and the 0th column is the visual bottom.  --> rotate270
 
 
-  public ImageFile(Path imageFile, MediaFileList parent) {
-    super(imageFile, parent);
+  public ImageFile(Path imageFile, MediaFileList parent, FileTime lastModified) {
+    super(imageFile, parent, lastModified);
   }
 
 
   @Override
   public void cancelBackgroundLoading() {
     super.cancelBackgroundLoading();
-    if (cachedContent != null) ((Image) cachedContent).cancel();
+    if (cachedContent instanceof ImageDecodeScheduler.DecodeTask decodeTask) ImageDecodeScheduler.cancel(decodeTask);
   }
 
   /**
-   * @return if content != null return the images progressProperty else null
+   * @return if content != null return the decoding task's progressProperty else null
    */
   @Override
   public ReadOnlyDoubleProperty getContentProgressProperty() {
-    if (cachedContent != null)
-      return ((Image) cachedContent).progressProperty();
+    if (cachedContent instanceof ImageDecodeScheduler.DecodeTask decodeTask)
+      return decodeTask.progressProperty();
+    else
+      return null;
+  }
+
+  /**
+   * thread safe
+   *
+   * @return the decoded image or null if not (yet) loaded
+   */
+  public Image getDecodedImage() {
+    if (cachedContent instanceof ImageDecodeScheduler.DecodeTask decodeTask)
+      return decodeTask.getImage();
     else
       return null;
   }
@@ -73,14 +91,14 @@ public class ImageFile extends MediaFileTaggedEditable {
    */
   @Override
   public Exception getMediaContentException() {
-    Image image = (Image) cachedContent;
-    if (image != null) {
-      if (image.getException() != null)
-        return image.getException();   //image but not valid
-      else if (image.isError())
-        return new Exception("image.IsError"); //image but not valid
+    if (cachedContent instanceof ImageDecodeScheduler.DecodeTask decodeTask) {
+      if (decodeTask.isCancelled())
+        return new CancellationException(); //cancelled preload is not valid
+      Throwable failure = decodeTask.getFailure();
+      if (failure != null)
+        return (failure instanceof Exception exception) ? exception : new Exception(failure); //decoding failed (e.g. out of memory)
       else
-        return null; //valid image --> no exception
+        return null; //valid image or still decoding --> no exception
     } else
       return null; //no image --> no exception
   }
@@ -101,27 +119,27 @@ public class ImageFile extends MediaFileTaggedEditable {
    */
   public int getBytesPerPixel() {
     try {
-      Image currentContent = (Image) cachedContent;
-      if (cachedContent != null) {
+      Image currentContent = getDecodedImage();
+      if (currentContent != null) {
         return switch (currentContent.getPixelReader().getPixelFormat().getType()) {
           case BYTE_RGB -> 3;
-          case BYTE_BGRA, BYTE_BGRA_PRE, BYTE_INDEXED -> 4;
-          case INT_ARGB, INT_ARGB_PRE -> 8;
+          case BYTE_BGRA, BYTE_BGRA_PRE, BYTE_INDEXED -> 4;  //indexed images are converted to BGRA by JavaFX
+          case INT_ARGB, INT_ARGB_PRE -> 4;
         };
       }
     } catch (Exception e) {
       //during complete flush (e.g. reload) it might happen that getPixelReader() returns null
     }
-    return 8; //as default, ie. if error occurred or PixelFormat is unknown then calculate with the maximum possible
+    return 4; //as default, ie. if error occurred or PixelFormat is unknown then calculate with the maximum possible
   }
 
   @Override
   public long getContentApproxMemSize() {
-    Image currentImage = (Image) cachedContent;
+    Image currentImage = getDecodedImage();
 
-    //the "guess"
+    //the decoded pixel buffer (width and height are 0 while still loading in background)
     if (currentImage != null)
-      return (long) ((currentImage.getHeight() * currentImage.getWidth() * getBytesPerPixel()) * 1.1);
+      return (long) currentImage.getHeight() * (long) currentImage.getWidth() * getBytesPerPixel();
     else
       return 0;
   }
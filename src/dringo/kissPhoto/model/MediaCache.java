@@ -1,7 +1,13 @@
 package dringo.kissPhoto.model;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import dringo.kissPhoto.KissPhoto;
+import mediautil.gen.Log;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * MIT License
@@ -12,14 +18,26 @@ import javafx.collections.ObservableList;
  * This Class implements a cache strategy for speeding up displaying of pictures/movies:
  * <ul>
  * <li>The type of content and its size can be (very) different for every mediaFile of MediaFileList.
- * <li>The cache buffer therefore tries to keep MIN_FREE_MEM_SIZE bytes free by deleting the oldest media
- * from the cache until MIN-FREE_MEM_SIZE is free again.<br>
- * <li>the cacheBuffer is filled in the order of requests (always stored at the end)
- * <li>the oldest media is removed from cache if it is full
+ * <li>The cache holds at most budget bytes of media content. The size of every entry is taken from the content itself
+ * (e.g. width*height*bytesPerPixel of a decoded image, see MediaFile.getContentApproxMemSize()).
+ * As images are loaded in background an estimated size (the average entry) is reserved while loading
+ * and replaced by the real size when loading has finished (see updateSize()), so that several loads in parallel cannot exceed the budget
+ * <li>the cacheBuffer is kept in the order of use: loaded media and cache hits (see touch()) are moved to the end, i.e. it is a LRU list
+ * <li>the oldest media is removed from cache if the budget is exceeded
  * </ul>
+ * The budget can be set in the global settings (MediaCache_budgetMB). Default: all heap except MIN_FREE_MEM_SIZE (but at least 1/4 of the heap)
+ * <br>
+ * All methods are synchronized, because the cache is also maintained from background threads (e.g. MediaFileListSavingTask)
+ * <br>
+ * There is no output on the console in the cache's hot path. Metrics (size, hits/misses, evictions) can be sampled via JMX (see MediaCacheMXBean)
+ * evictions are printed only if Log.debugLevel is LEVEL_DEBUG
  *
  * @author Ingo
  * @since 2011-09-12
+ * @version 2026-10-17: size is reserved for content still loading, eviction also after updateSize(), cache hits move the entry to the end (touch())
+ * @version 2026-10-17: estimateCapacity() for limiting preloads
+ * @version 2026-10-17: metrics via JMX (MediaCacheMXBean) instead of console output
+ * @version 2026-10-17: byte budget with exact sizes instead of free memory heuristics, no more gc() calls. LinkedHashMap for O(1) LRU handling
  * @version 2022-10-15: getAvailableMemory based (again) on getRuntime()-methods, more. MIN_FREE_MEM_SIZE 300-->400MB
  * @version 2020-12-20: media Cache now cooperates directly with MediaFile. Preload strategy now in MediaFileList.
  * @version 2019-07-07: improvement of exception handling: subscribing to Error-Property
@@ -29,102 +47,151 @@ import javafx.collections.ObservableList;
  * @version 2014-05-04: MediaFiles (links) instead of indices are stored, because indices can be changed by the user
  * @version 2014-04-18: Preload can be disabled temporarily e.g. while moving files in fileTable view
  */
-public class MediaCache {
+public class MediaCache implements MediaCacheMXBean {
   private static final long MB = 1 << 20;      //=2^20
-  private static final long MIN_FREE_MEM_SIZE = 400 * MB;
+  private static final long MIN_FREE_MEM_SIZE = 400 * MB;  //keep free for the rest of kissPhoto if no budget has been set in the settings
+  private static final String BUDGET_MB = "MediaCache_budgetMB"; //id in global settings
+  private static final long FIRST_ENTRY_ESTIMATE = 48 * MB;  //reserved for content still loading if the cache is empty (12 MP image, 4 bytes per pixel)
+
+  //key=mediaFile, value=bytes accounted for its content. Insertion order: first=oldest, last=youngest
+  private final LinkedHashMap<MediaFile, Long> cacheBuffer = new LinkedHashMap<>();
+  private final long budget;   //max bytes of content held in the cache
+  private long bytesHeld = 0;  //sum of all values in cacheBuffer
 
-  private final ObservableList<MediaFile> cacheBuffer;
-  private final Runtime env = Runtime.getRuntime();
+  //metrics (see MediaCacheMXBean)
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long evictionCount = 0;
+  private long evictedBytes = 0;
 
   /**
    * constructor to build a cache for accessing the list passed in the parameter
    */
   public MediaCache() {
-    cacheBuffer = FXCollections.observableArrayList();
+    long maxMemory = Runtime.getRuntime().maxMemory();
+    long defaultBudget = Math.max(maxMemory - MIN_FREE_MEM_SIZE, maxMemory / 4);
+    long newBudget;
+    try {
+      newBudget = Long.parseLong(KissPhoto.globalSettings.getProperty(BUDGET_MB)) * MB;
+      if (newBudget <= 0) newBudget = defaultBudget;
+    } catch (Exception e) {
+      newBudget = defaultBudget; //no or invalid setting
+    }
+    budget = newBudget;
+
+    //publish metrics via JMX
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("dringo.kissPhoto:type=MediaCache"));
+    } catch (Exception e) {
+      //nothing to do: the cache works without metrics
+    }
   }
 
+  /**
+   * count a request for media content
+   *
+   * @param hit true if the content was already in the cache, false if it needs to be loaded
+   */
+  public synchronized void countRequest(boolean hit) {
+    if (hit)
+      hitCount++;
+    else
+      missCount++;
+  }
 
   /**
-   * Calculate available memory from env=getRuntime()   /maxMem=max heap-size of JVM,totalMem=current heap size, freeMem=available in current heap
-   * unassigned=maxMemory()-totalMemory(); available=unassigned + freeMemory()
+   * estimate how many media fit into the budget based on the average size of the entries currently held
    *
-   * @return the available memory in bytes from env=getRuntime()
+   * @return estimated number of entries or Integer.MAX_VALUE if the cache is empty (no estimation possible)
    */
-  public long getAvailableMem() {
-    //MemoryUsage oldHeapUsage = null;
-
-    //System.out.println("--------------------------------");
-    System.out.println("MediaCache.getAvailableMem->Cache Size: " + cacheBuffer.size());
-    /*
-    for (MemoryPoolMXBean mpBean : ManagementFactory.getMemoryPoolMXBeans()) {
-      if (mpBean.getType() == MemoryType.HEAP && !mpBean.getName().contains("den") && !mpBean.getName().contains("urvivor")) { //not (E)den or (S)urvivor heap is OldHeap
-        oldHeapUsage = mpBean.getUsage();
-        System.out.println("oldHeapUsage found: " + mpBean.getName());
-      }
-    }
-    */
-    //System.out.println(String.format("available: env--> %.2f MB, OldHeap--> %.2f MB", (double) ((env.maxMemory() - env.totalMemory() + env.freeMemory()) / MB),
-    //    (double) (oldHeapUsage.getMax() - oldHeapUsage.getUsed()) / MB));
-
-    long available = env.maxMemory() - env.totalMemory() + env.freeMemory();  //unassigned=max-total; available=unassigned + free
-    System.out.printf("MediaCache: env max=%.2f MB, total=%.2f MB, free=%.2f MB, available=%.2f MB%n", 1.0*env.maxMemory()/MB, 1.0*env.totalMemory()/MB, 1.0*env.freeMemory()/MB, 1.0*available/MB);
-
-//    System.out.println("Max Heap Size = maxMemory() = " + env.maxMemory()); //max heap size from -Xmx, i.e. is constant during runtime
-//    System.out.println("Current Heap Size = totalMemory() = " +  env.totalMemory()); //currently assigned  heap
-//    System.out.println("Available in Current Heap = freeMemory() = " + env.freeMemory()); //current heap will extend if no more freeMemory to a maximum of maxMemory
-//    System.out.println("Currently Used Heap = " + (env.totalMemory()-env.freeMemory()) );
-//    System.out.println("Unassigned Heap = " + (env.maxMemory()-env.totalMemory()));
-//    System.out.println("Currently Totally Available Heap Space = "+ ((env.maxMemory()-env.totalMemory()) + env.freeMemory()) ); //available=unassigned + free
-
-    /*
-    for (MemoryPoolMXBean mpBean : ManagementFactory.getMemoryPoolMXBeans()) {
-      if (mpBean.getType() == MemoryType.HEAP) {
-        System.out.printf(
-            "Name: %s: used= %.2f MB, committed= %.2f MB, max=%.2f MB\n",
-            mpBean.getName(), (double) mpBean.getUsage().getUsed() / MB, (double) mpBean.getUsage().getCommitted() / MB, (double) mpBean.getUsage().getMax() / MB
-        );
-      }
-    }
+  public synchronized int estimateCapacity() {
+    if (cacheBuffer.isEmpty() || bytesHeld <= 0)
+      return Integer.MAX_VALUE;
+    else
+      return (int) Math.min(Integer.MAX_VALUE, budget / (bytesHeld / cacheBuffer.size() + 1));
+  }
 
-    */
+  //------------- MediaCacheMXBean
 
-    return available;
-    /*
-    if (oldHeapUsage != null) {
-      long retVal = oldHeapUsage.getMax() - oldHeapUsage.getUsed();
-      System.out.println("getAvailableMem()=" + retVal + " ("+ retVal/MB +" MB)");
-      return retVal;
-    }
-    else
-      return 0;
-    */
+  @Override
+  public long getBudget() {
+    return budget;
+  }
+
+  @Override
+  public synchronized long getBytesHeld() {
+    return bytesHeld;
+  }
+
+  @Override
+  public synchronized int getEntries() {
+    return cacheBuffer.size();
+  }
+
+  @Override
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  @Override
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  @Override
+  public synchronized long getEvictedBytes() {
+    return evictedBytes;
   }
 
   /**
    * If the cache is full
-   * i.e. less memory available then MIN_FREE_MEM_SIZE
+   * i.e. there is no more room for the next media in the budget (an average entry is assumed for the next media)
    * then the oldest entries are deleted (and content flushed)
    * <p>
    * called twice per mediaFile: before media is (pre) loaded and before meta-info is loaded
    */
-  public void maintainCacheSizeByFlushingOldest() {
-    //flushing cached content does not have direct effect on getAvailableMem (until gc() has run)
-    //therefore we add a "guessed" value for every MediaFile that has been flushed to the getAvailableMem()
-    //to forecast the effect of flushing and to determine how many mediaFiles need to be flushed until MIN_FREE_MEM_SIZE
-    //is respected again
-    long approxMemFreed = 0;
-
-    //remove the oldest MediaFiles from cache until MIN_FREE_MEM_SIZE is reached again
-    while (getAvailableMem() + approxMemFreed <= MIN_FREE_MEM_SIZE && !cacheBuffer.isEmpty()) {//size = 0 means: to less memory for caching at all
-      MediaFile oldestMediaFile = cacheBuffer.getFirst();                              //begin of the list contains the oldest element
-      approxMemFreed = approxMemFreed + oldestMediaFile.getContentApproxMemSize();
-      oldestMediaFile.flushMediaContent();
-      cacheBuffer.removeFirst();
-      //System.out.println("flushing --> cache Buffer Size = " + cacheBuffer.size() + " approxMemFreed=" + approxMemFreed + " availMem="+getAvailableMem());
+  public synchronized void maintainCacheSizeByFlushingOldest() {
+    Iterator<Map.Entry<MediaFile, Long>> oldestFirst = cacheBuffer.entrySet().iterator();
+
+    //remove the oldest MediaFiles from cache until there is room in the budget for another one
+    while (oldestFirst.hasNext() && bytesHeld + bytesHeld / cacheBuffer.size() > budget) {
+      evict(oldestFirst.next(), oldestFirst);
     }
-    if (approxMemFreed >0)
-      env.gc(); //only if something has been taken out of the cache call garbage collector
-    //System.out.println("available mem after gc=" + getAvailableMem());
+  }
+
+  /**
+   * remove the oldest MediaFiles from cache until the budget is kept, e.g. after the real size of an entry has become known
+   *
+   * @param keep this mediaFile is not removed (the one whose size has just been updated)
+   */
+  private void evictUntilBudgetIsKept(MediaFile keep) {
+    Iterator<Map.Entry<MediaFile, Long>> oldestFirst = cacheBuffer.entrySet().iterator();
+    while (oldestFirst.hasNext() && bytesHeld > budget) {
+      Map.Entry<MediaFile, Long> oldest = oldestFirst.next();
+      if (oldest.getKey() != keep) evict(oldest, oldestFirst);
+    }
+  }
+
+  /**
+   * flush the content of an entry and remove it from the cache
+   *
+   * @param oldest      the entry to be removed
+   * @param oldestFirst the iterator which has returned the entry
+   */
+  private void evict(Map.Entry<MediaFile, Long> oldest, Iterator<Map.Entry<MediaFile, Long>> oldestFirst) {
+    oldest.getKey().flushMediaContent();
+    bytesHeld -= oldest.getValue();
+    oldestFirst.remove();
+
+    evictionCount++;
+    evictedBytes += oldest.getValue();
+    if (Log.debugLevel >= Log.LEVEL_DEBUG)
+      System.out.println("MediaCache: evicted " + oldest.getKey().getFileOnDiskName() + " (" + oldest.getValue() / MB + " MB), held=" + bytesHeld / MB + " MB of " + budget / MB + " MB");
   }
 
 
@@ -137,10 +204,45 @@ public class MediaCache {
    *
    * @param mediaFile  the file to be put into the cache
    */
-  public void addAsLatest(MediaFile mediaFile) {
-    cacheBuffer.remove(mediaFile);  //for the case it was already in the cache
+  public synchronized void addAsLatest(MediaFile mediaFile) {
+    Long oldSize = cacheBuffer.remove(mediaFile);  //for the case it was already in the cache
+    if (oldSize != null) bytesHeld -= oldSize;
+
     //add as new i.e. youngest element
-    cacheBuffer.add(mediaFile);//and remember that it is now in memory
+    long size = mediaFile.getContentApproxMemSize();
+    if (size <= 0) //still loading in background: reserve an average entry until updateSize() is called
+      size = cacheBuffer.isEmpty() ? FIRST_ENTRY_ESTIMATE : Math.max(1, bytesHeld / cacheBuffer.size());
+    cacheBuffer.put(mediaFile, size);//and remember that it is now in memory
+    bytesHeld += size;
+  }
+
+  /**
+   * the content of a mediaFile has been requested again (cache hit): it becomes the youngest entry,
+   * so that media the user keeps returning to are evicted last (LRU)
+   * If the mediaFile is not in the cache nothing happens
+   *
+   * @param mediaFile the file whose content has been used
+   */
+  public synchronized void touch(MediaFile mediaFile) {
+    Long size = cacheBuffer.remove(mediaFile);
+    if (size != null) cacheBuffer.put(mediaFile, size); //re-inserted at the end
+  }
+
+  /**
+   * the size of the content of a mediaFile has changed, e.g. because background loading of an image has finished
+   * The position in the LRU list is not changed. If the real size exceeds the budget the oldest other entries are removed.
+   * If the mediaFile is not in the cache nothing happens
+   *
+   * @param mediaFile the file which content size is re-evaluated
+   */
+  public synchronized void updateSize(MediaFile mediaFile) {
+    Long oldSize = cacheBuffer.get(mediaFile);
+    if (oldSize != null) {
+      long size = mediaFile.getContentApproxMemSize();
+      cacheBuffer.put(mediaFile, size); //existing key: insertion order is not changed
+      bytesHeld += size - oldSize;
+      evictUntilBudgetIsKept(mediaFile);
+    }
   }
 
   /**
@@ -149,18 +251,20 @@ public class MediaCache {
    *
    * @param mediaFile to be removed from cache
    */
-  public void flush(MediaFile mediaFile) {
-    cacheBuffer.remove(mediaFile);
+  public synchronized void flush(MediaFile mediaFile) {
+    Long size = cacheBuffer.remove(mediaFile);
+    if (size != null) bytesHeld -= size;
   }
 
   /**
    * Empty Cache by marking all Cache Elements as invalid
    */
-  public void flushAll() {
+  public synchronized void flushAll() {
 
-    for (MediaFile element : cacheBuffer) {
+    for (MediaFile element : cacheBuffer.keySet()) {
       element.flushMediaContent();
     }
     cacheBuffer.clear();
+    bytesHeld = 0;
   }
 }
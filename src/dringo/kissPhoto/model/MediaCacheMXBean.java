@@ -0,0 +1,49 @@
+package dringo.kissPhoto.model;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * Metrics of the MediaCache which can be sampled via JMX (e.g. with jconsole or VisualVM) without any output on the console.
+ * The MediaCache registers itself as dringo.kissPhoto:type=MediaCache
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public interface MediaCacheMXBean {
+  /**
+   * @return number of mediaFiles which content is currently held in the cache
+   */
+  int getEntries();
+
+  /**
+   * @return bytes of media content currently held in the cache
+   */
+  long getBytesHeld();
+
+  /**
+   * @return max bytes of media content held in the cache
+   */
+  long getBudget();
+
+  /**
+   * @return number of content requests which could be served from the cache
+   */
+  long getHitCount();
+
+  /**
+   * @return number of content requests which needed loading
+   */
+  long getMissCount();
+
+  /**
+   * @return number of mediaFiles removed from the cache because the budget was exceeded
+   */
+  long getEvictionCount();
+
+  /**
+   * @return bytes of media content removed from the cache because the budget was exceeded
+   */
+  long getEvictedBytes();
+}
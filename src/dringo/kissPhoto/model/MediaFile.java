@@ -12,16 +12,23 @@ import dringo.kissPhoto.view.mediaViewers.PlayerViewerVLCJ;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.ObservableList;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.text.MessageFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 
 /**
  * MIT License
@@ -38,6 +45,15 @@ import java.util.Date;
  *
  * @author ikreuz
  * @since 2012-08-28
+ * @version 2026-10-17 search compares lower case shadows of the columns (made once per changed text) with the compiled search text, the date column's shadow without generating its property
+ * @version 2026-10-17 size on disk is stored, so that the folder can be compared with a snapshot (see MediaFileList.onFolderSnapshot())
+ * @version 2026-10-17 renaming on disk is reported to the mediaFileList (index of the filenames on disk)
+ * @version 2026-10-17 getMediaCacheCapacity() for limiting preloads
+ * @version 2026-10-17 cache hits/misses are counted for the cache's metrics
+ * @version 2026-10-17 cache hits are reported to the cache (LRU), the progress listener is removed when loading has finished or the content is flushed
+ * @version 2026-10-17 cache entry size is updated when background loading has finished
+ * @version 2026-10-17 thread safe java.time date formatting, modified date stored as epoch millis and formatted lazily
+ * @version 2026-10-17 lastModified can be passed from folder scan, so that MediaFiles can be created in parallel without reading the disk again
  * @version 2024-10-06 retries set to 30 for PlayerViewerFX. Corrections in comments (false/true exchanged), getCachedOrLoadMediaContent reworked
  * @version 2022-10-15 retry strategy corrected: no more infinite retries (retries used currently for images in PhotoViewer only)
  * @version 2022-01-07 meta info writing supported. performDelete() and moveFileToDeleted() separated, so that backup files before transformations become possible
@@ -69,6 +85,12 @@ public abstract class MediaFile implements Comparable<MediaFile> {
   public static final int COL_EXTENSION = 4;
   public static final int COL_FILEDATE = 5;
 
+  //lower case shadows of the searchable columns for the case-insensitive search (see getLowerCaseText()), index=COL_ constant
+  //a shadow is renewed as soon as the column's text has been changed (another String object) and is not generated before the first search
+  private String[] shadowedTexts = null;
+  private String[] lowerCaseShadows = null;
+  private long shadowedModifiedMillis; //time stamp the date column's shadow was made from, if modifiedDate has not been generated yet
+
   public final static int MAX_LOAD_RETRIES = 30;
   public static final int SUCCESSFUL = 0;
   public static final int SECOND_RUN = 1;
@@ -79,7 +101,10 @@ public abstract class MediaFile implements Comparable<MediaFile> {
   protected final static String SECOND_EDITOR = "_2ndEditor";
   //helpers
   public static final String DATE_PATTERN = "yyyy-MM-dd HH:mm:ss";
-  public static final SimpleDateFormat dateFormatter = new SimpleDateFormat(DATE_PATTERN);
+  //DateTimeFormatter is immutable and therefore thread safe. Parsing is lenient (like SimpleDateFormat was) to repair e.g. 2024-02-30 to 2024-03-01
+  public static final DateTimeFormatter dateFormatter = new DateTimeFormatterBuilder().parseLenient().appendPattern(DATE_PATTERN).toFormatter().withResolverStyle(ResolverStyle.LENIENT);
+  public static final long UNKNOWN_DATE = Long.MIN_VALUE; //modifiedMillis if the date could not be read from disk
+  public static final long UNKNOWN_SIZE = -1;             //fileSize if the attributes have not been read while scanning the folder
 
   /**
    * status is a single character representing the most important boolean error flag of this File
@@ -90,6 +115,8 @@ public abstract class MediaFile implements Comparable<MediaFile> {
   protected Path fileOnDisk;   //including physical filename on Disk...to be renamed
   protected final MediaFileList mediaFileList; //every list element knows about its list: Access counterPosition and for future use (e.g. support dirTree)
   protected Object cachedContent = null;       //cached content is stored in mediaFile object and listed in the cache list
+  private ReadOnlyDoubleProperty listenedContentProgress = null; //progress of cachedContent still loading in background
+  private ChangeListener<Number> contentProgressListener = null; //updates the cache entry's size when loading has finished
 
   /**
    * Constants for rotating (lossless if possible) media.
@@ -117,7 +144,9 @@ public abstract class MediaFile implements Comparable<MediaFile> {
   public final StringProperty separator = new SimpleStringProperty();
   public final StringProperty description = new SimpleStringProperty();
   public final StringProperty extension = new SimpleStringProperty();
-  public final StringProperty modifiedDate = new SimpleStringProperty();
+  private long modifiedMillis = UNKNOWN_DATE;   //last modified time on disk (or after writing the time stamp)
+  private long fileSize = UNKNOWN_SIZE;         //size on disk when the folder was read (or compared with a snapshot)
+  private StringProperty modifiedDate = null;   //lazy: only generated when needed (e.g. when shown in the table or edited). Then it is the valid value (e.g. changed by user)
 
   //errors regarding the filename (to be shown on GUI)
   private boolean renameError = false;   //indicate that the last rename was not successful
@@ -132,19 +161,56 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    * @param mediaFileList double linked: link to the mediaFileList where the mediaFile resides in
    */
   public MediaFile(Path file, MediaFileList mediaFileList) {
+    this(file, mediaFileList, null);
+  }
+
+  /**
+   * @param file          the file that will be wrapped by this class or its subclasses
+   * @param mediaFileList double linked: link to the mediaFileList where the mediaFile resides in
+   * @param lastModified  the file's last modified time if already known (e.g. from the attributes read while scanning the folder)
+   *                      or null to read it from disk now
+   */
+  protected MediaFile(Path file, MediaFileList mediaFileList, FileTime lastModified) {
     this.mediaFileList = mediaFileList;
     this.fileOnDisk = file;
 
     parseFilename(fileOnDisk.getFileName().toString());
 
     try {
-      this.modifiedDate.set(dateFormatter.format(new Date(Files.getLastModifiedTime(fileOnDisk).toMillis())));
+      if (lastModified == null) lastModified = Files.getLastModifiedTime(fileOnDisk);
+      this.modifiedMillis = lastModified.toMillis();
     } catch (IOException e) {
       //if date cannot be accessed nothing will be displayed as the date
-      this.modifiedDate.set("");
+      this.modifiedMillis = UNKNOWN_DATE;
     }
   }
 
+  /**
+   * convert a time stamp into the string representation used in kissPhoto (see DATE_PATTERN)
+   * thread safe
+   *
+   * @param epochMillis the time stamp in milliseconds since 1970 (like FileTime.toMillis())
+   * @return the formatted date/time in the default time zone or "" for UNKNOWN_DATE
+   */
+  public static String formatDate(long epochMillis) {
+    if (epochMillis == UNKNOWN_DATE)
+      return "";
+    else
+      return dateFormatter.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+  }
+
+  /**
+   * interpret a string in the format of DATE_PATTERN as a time stamp in the default time zone
+   * thread safe
+   *
+   * @param date the string to be parsed
+   * @return the time stamp in milliseconds since 1970 (like FileTime.toMillis())
+   * @throws DateTimeParseException if the string cannot be interpreted as a date/time
+   */
+  public static long parseDate(String date) throws DateTimeParseException {
+    return LocalDateTime.parse(date, dateFormatter).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
   /**
    * Factory method for creating a matching subclass of MediaFile
    * supported MediaPlayer FileTypes are documented in JavaFX: Package javafx.scene.media
@@ -155,13 +221,26 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    * @return subclass of MediaFile
    */
   public static MediaFile createMediaFile(Path file, MediaFileList parentList) {
+    return createMediaFile(file, null, parentList);
+  }
+
+  /**
+   * Factory method for creating a matching subclass of MediaFile
+   * if the file's attributes have already been read (e.g. while scanning a folder) the disk is not accessed again
+   *
+   * @param file         to be investigated and wrapped by MediaFile
+   * @param lastModified the file's last modified time if already known, null to read it from disk
+   * @param parentList   every MediaFile knows about the list it is contained in
+   * @return subclass of MediaFile
+   */
+  public static MediaFile createMediaFile(Path file, FileTime lastModified, MediaFileList parentList) {
     //create specialized MediaFile-object based on extension
     if (PhotoViewer.willAccept(file)){
-      return new ImageFile(file, parentList);
+      return new ImageFile(file, parentList, lastModified);
     } else if (PlayerViewerVLCJ.willAccept(file)){
-        return new PlayableFile(file, parentList);
+        return new PlayableFile(file, parentList, lastModified);
     } else {
-      return new OtherFile(file, parentList);
+      return new OtherFile(file, parentList, lastModified);
     }
   }
 
@@ -350,16 +429,13 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    * @return true if found, false if not (same as searchRec.found())
    */
   public boolean searchNext(String searchText, MediaFileList.SearchRec searchRec) {
-    String textToSearchIn;
     boolean found = false;
     int foundPos = 0;
+    String lowerCaseSearchText = searchRec.compile(searchText);
 
     while (!found && searchRec.tableColumn <= COL_FILEDATE) {
-
-      textToSearchIn = getStringPropertyForColNumber(searchRec.tableColumn).get();
-
-      //search is not case-sensitive (toUpperCase is compared)
-      foundPos = textToSearchIn.toLowerCase().indexOf(searchText.toLowerCase(), searchRec.endPos);
+      //search is not case-sensitive (lower case shadow and compiled search text are compared)
+      foundPos = getLowerCaseText(searchRec.tableColumn).indexOf(lowerCaseSearchText, searchRec.endPos);
       found = (foundPos >= 0);
 
       if (!found) searchRec.tableColumn++;  //continue search in next column if necessary
@@ -378,6 +454,50 @@ public abstract class MediaFile implements Comparable<MediaFile> {
     return found;
   }
 
+  /**
+   * helper function for MediaFileList.searchNext: check quickly if a row contains the search text at all.
+   * This is called for many MediaFiles in parallel, but never for the same MediaFile at the same time
+   *
+   * @param lowerCaseSearchText the compiled search text (see SearchRec.compile())
+   * @return true if any column contains the text (case-insensitive)
+   */
+  boolean containsSearchText(String lowerCaseSearchText) {
+    for (int colNumber = COL_PREFIX; colNumber <= COL_FILEDATE; colNumber++)
+      if (getLowerCaseText(colNumber).contains(lowerCaseSearchText)) return true;
+    return false;
+  }
+
+  /**
+   * the lower case text of a column. It is made only once per text: as long as the column's text is unchanged
+   * the shadow is reused, so that searching and replacing in big folders does not allocate a lower case string per comparison
+   *
+   * @param colNumber the column number (COL_ constant)
+   * @return the column's text in lower case
+   */
+  private String getLowerCaseText(int colNumber) {
+    if (shadowedTexts == null) {
+      shadowedTexts = new String[COL_FILEDATE + 1];
+      lowerCaseShadows = new String[COL_FILEDATE + 1];
+    }
+    if (colNumber == COL_FILEDATE && modifiedDate == null) {
+      //don't generate the date property just for searching (also called from background threads): format the time stamp instead
+      if (lowerCaseShadows[COL_FILEDATE] == null || shadowedTexts[COL_FILEDATE] != null || shadowedModifiedMillis != modifiedMillis) {
+        lowerCaseShadows[COL_FILEDATE] = formatDate(modifiedMillis).toLowerCase();
+        shadowedTexts[COL_FILEDATE] = null; //null=shadow made from modifiedMillis
+        shadowedModifiedMillis = modifiedMillis;
+      }
+      return lowerCaseShadows[COL_FILEDATE];
+    }
+
+    String text = getStringPropertyForColNumber(colNumber).get();
+    if (text == null) text = "";
+    if (shadowedTexts[colNumber] != text) { //identity: every change of a property sets another String object
+      lowerCaseShadows[colNumber] = text.toLowerCase();
+      shadowedTexts[colNumber] = text;
+    }
+    return lowerCaseShadows[colNumber];
+  }
+
   /**
    * helper for selecting the correct media file's field according to the table info in searchRec
    *
@@ -391,7 +511,7 @@ public abstract class MediaFile implements Comparable<MediaFile> {
       case COL_SEPARATOR -> separator;
       //case COL_NO_DESCRIPTION -> description; //same as default
       case COL_EXTENSION -> extension;
-      case COL_FILEDATE -> modifiedDate;
+      case COL_FILEDATE -> modifiedDateProperty();
       default -> description;
     };
   }
@@ -495,7 +615,9 @@ public abstract class MediaFile implements Comparable<MediaFile> {
       }
 
       Files.move(fileOnDisk, newFile);
+      String oldName = getFileOnDiskName();
       fileOnDisk = newFile;
+      if (mediaFileList != null) mediaFileList.fileOnDiskRenamed(this, oldName);
 
     } catch (Exception e) {    //can be file access denied or write protect or IO Error or...
       setFilenameChanged(true);
@@ -513,9 +635,10 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    */
   private boolean performSetTimeStamp() {
     try {
-      FileTime newTimeStamp = FileTime.fromMillis(dateFormatter.parse(modifiedDate.get()).getTime());
+      FileTime newTimeStamp = FileTime.fromMillis(parseDate(getModifiedDate()));
       Files.setLastModifiedTime(fileOnDisk, newTimeStamp);
       Files.setAttribute(fileOnDisk, "basic:creationTime", newTimeStamp, LinkOption.NOFOLLOW_LINKS);
+      modifiedMillis = newTimeStamp.toMillis();
 
       //successful
       setTimeStampChanged(false);
@@ -672,14 +795,34 @@ public abstract class MediaFile implements Comparable<MediaFile> {
       resetLoadRetryCounter();
     //if Retry then counter still needed (will be counted in shouldRetryLoad() that must be called before trying to retry)
 
-    //System.out.println("MediaFile.getCachedOrLoadMediaContent isMediaContentInvalid=" + isMediaContentInvalid());
-    if (isMediaContentInvalid()){        //load only if necessary, i.e. if not already successfully loaded and cached
+    boolean loadNecessary = isMediaContentInvalid();
+    mediaCache.countRequest(!loadNecessary);
+    if (loadNecessary){        //load only if necessary, i.e. if not already successfully loaded and cached
       //if not in cache then ask the viewer to load it
-      mediaCache.maintainCacheSizeByFlushingOldest(); //housekeeping before load for having enough memory to load (incl. GC() call)
+      mediaCache.maintainCacheSizeByFlushingOldest(); //housekeeping before load for having enough room in the cache's budget
 
+      stopListeningToContentProgress(); //the previous (failed) content is replaced
       cachedContent = mediaViewer.getViewerSpecificMediaContent(this);
-      if (cachedContent != null)
+      if (cachedContent != null) {
         mediaCache.addAsLatest(this);//and remember that it is now in memory and the youngest entry of the cache
+
+        //the size of content that is loaded in background is only known when loading has finished
+        ReadOnlyDoubleProperty progress = getContentProgressProperty();
+        if (progress != null && progress.get() < 1.0) {
+          contentProgressListener = (observable, oldValue, newValue) -> {
+            if (newValue.doubleValue() >= 1.0) {
+              stopListeningToContentProgress();
+              mediaCache.updateSize(this);
+            }
+          };
+          listenedContentProgress = progress;
+          progress.addListener(contentProgressListener);
+        }
+      } else {
+        stopListeningToContentProgress();
+      }
+    } else {
+      mediaCache.touch(this); //cache hit: the content becomes the youngest entry of the cache (LRU)
     }
 
 
@@ -720,12 +863,32 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    * don't forget to clear it in the cache also (or use flushFromCache instead)
    */
   public void flushMediaContent() {
+    stopListeningToContentProgress(); //loading of the flushed content is no longer of interest (e.g. cancelled)
     cachedContent = null;
   }
 
+  /**
+   * remove the listener that updates the cache entry's size when background loading has finished
+   * it is removed when loading has finished or the content is flushed or replaced, so that no listener survives its content
+   */
+  private synchronized void stopListeningToContentProgress() {
+    if (listenedContentProgress != null) {
+      listenedContentProgress.removeListener(contentProgressListener);
+      listenedContentProgress = null;
+      contentProgressListener = null;
+    }
+  }
+
   public static void flushAllMediaFromCache(){
     mediaCache.flushAll();
   }
+
+  /**
+   * @return estimated number of media fitting into the cache's budget (see MediaCache.estimateCapacity())
+   */
+  public static int getMediaCacheCapacity(){
+    return mediaCache.estimateCapacity();
+  }
   /*
    * --------------------- flag getters and setters---------------------
    * write flags with these setters/getters to keep the status property up to date
@@ -736,9 +899,10 @@ public abstract class MediaFile implements Comparable<MediaFile> {
   public abstract ReadOnlyDoubleProperty getContentProgressProperty();
 
   /**
-   * For maintenance of the MediaCache a guess is necessary how much memory becomes available if the MediaFile is removed from cache and memory
+   * For maintenance of the MediaCache's budget the memory held by the mediaContent is needed
+   * Content that is still loading in background may return 0 until it has been loaded (see getContentProgressProperty())
    *
-   * @return approx size in bytes of the mediaContent
+   * @return size in bytes of the mediaContent
    */
   public abstract long getContentApproxMemSize();
 
@@ -921,13 +1085,68 @@ public abstract class MediaFile implements Comparable<MediaFile> {
     }
   }
 
+  /**
+   * the property is generated on first access only, so that opening a folder does not need to format the dates of all files
+   *
+   * @return the modified date as editable property (e.g. for the table column)
+   */
+  public StringProperty modifiedDateProperty() {
+    if (modifiedDate == null)
+      modifiedDate = new SimpleStringProperty(formatDate(modifiedMillis));
+    return modifiedDate;
+  }
+
   public String getModifiedDate() {
-    return modifiedDate.get();
+    if (modifiedDate == null)
+      return formatDate(modifiedMillis); //no need to generate the property just for reading
+    else
+      return modifiedDate.get();
+  }
+
+  /**
+   * @return the modified time stamp as read from disk (or written when saving) in milliseconds since 1970, or UNKNOWN_DATE
+   */
+  public long getModifiedMillis() {
+    return modifiedMillis;
+  }
+
+  /**
+   * @return the size on disk when the folder was read or UNKNOWN_SIZE
+   */
+  public long getFileSize() {
+    return fileSize;
+  }
+
+  /**
+   * remember the size on disk read together with lastModified while scanning the folder (see MediaFileList.createMediaFiles())
+   *
+   * @param fileSize the size in bytes
+   */
+  void setFileSize(long fileSize) {
+    this.fileSize = fileSize;
+  }
+
+  /**
+   * compare size and last modified time with the attributes read from disk (see MediaFileList.onFolderSnapshot())
+   * and take them over if they differ. The modified date is updated on screen, if it has not been edited by the user
+   *
+   * @param attributes the current attributes of the file on disk
+   * @return true if the file has been changed on disk (and its content must be flushed from the cache)
+   */
+  boolean updateDiskAttributes(BasicFileAttributes attributes) {
+    long newModifiedMillis = attributes.lastModifiedTime().toMillis();
+    boolean changed = newModifiedMillis != modifiedMillis || (fileSize != UNKNOWN_SIZE && attributes.size() != fileSize);
+    fileSize = attributes.size();
+    if (changed) {
+      modifiedMillis = newModifiedMillis;
+      if (modifiedDate != null && !isTimeStampChanged()) modifiedDate.set(formatDate(modifiedMillis));
+    }
+    return changed;
   }
 
   public void setModifiedDate(String modifiedDate) {
-    if(!modifiedDate.equals(this.modifiedDate.get())) {
-      this.modifiedDate.set(modifiedDate);
+    if(!modifiedDate.equals(getModifiedDate())) {
+      modifiedDateProperty().set(modifiedDate);
       setTimeStampChanged(true);
     }
   }
@@ -937,11 +1156,12 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    */
 
   public String getModifiedDateOnly() {
-    int i = modifiedDate.get().indexOf(" "); //all before space is date
+    String date = getModifiedDate();
+    int i = date.indexOf(" "); //all before space is date
     if (i >= 0) {
-      return modifiedDate.get().substring(0, i);
+      return date.substring(0, i);
     } else {
-      return modifiedDate.get();  //if date is malformed then return it completely
+      return date;  //if date is malformed then return it completely
     }
   }
 
@@ -950,11 +1170,12 @@ public abstract class MediaFile implements Comparable<MediaFile> {
    */
 
   public String getModifiedTimeOnly() {
-    int i = modifiedDate.get().indexOf(" "); //all after space is time
+    String date = getModifiedDate();
+    int i = date.indexOf(" "); //all after space is time
     if (i >= 0) {
-      return modifiedDate.get().substring(i + 1);
+      return date.substring(i + 1);
     } else {
-      return modifiedDate.get();  //if date is malformed then return it completely
+      return date;  //if date is malformed then return it completely
     }
   }
 
@@ -2,20 +2,29 @@ package dringo.kissPhoto.model;
 
 import dringo.kissPhoto.KissPhoto;
 import dringo.kissPhoto.ctrl.CounterPositionHeuristic;
+import dringo.kissPhoto.ctrl.FileChangeWatcher;
 import dringo.kissPhoto.helper.PathHelpers;
 import dringo.kissPhoto.view.FileTableView;
 import dringo.kissPhoto.view.MediaContentView;
+import dringo.kissPhoto.view.mediaViewers.ImageDecodeScheduler;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.IntegerBinding;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
 import javafx.scene.control.TreeItem;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.text.DecimalFormat;
 import java.text.MessageFormat;
+import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * MIT License
@@ -36,6 +45,14 @@ import java.text.MessageFormat;
  *
  * @author Dringo
  * @since 2012-09-01
+ * @version 2026-10-17 searchNext() skips rows without the search text in parallel chunks, compiled search text
+ * @version 2026-10-17 openFolder() reads the directory only once: the heuristic gets the names of the first entries
+ * @version 2026-10-17 onFolderSnapshot() applies the differences between the folder and the list (after lost events or pausing)
+ * @version 2026-10-17 getMediaFile() and searchPhysicalFilename() use a hash index of the filenames on disk
+ * @version 2026-10-17 onFolderChanged() applies a batch of changes as one removal and one addition
+ * @version 2026-10-17 preloads are decoded with priorities (next, previous, speculative)
+ * @version 2026-10-17 adaptive, direction aware preloading
+ * @version 2026-10-17 openFolder() shows the first files immediately and loads the rest in parallel batches in background
  * @version 2023-01-05 undeleteLastFile() added
  * @version 2020-12-20 Media Cache moved to MediaFile
  * @version 2020-11-30 clean up code
@@ -47,6 +64,7 @@ import java.text.MessageFormat;
  */
 public class MediaFileList { //should extend ObservableList, but JavaFx only provides FactoryClasses. Therefore, it contains an ObservableList only
   private static final String NO_SUCH_FILE_OR_DIRECTORY = "no.such.file.or.directory";
+  private static final int FIRST_CHUNK_SIZE = 100; //number of files read synchronously in openFolder() before loading continues in background
 
   private Path folder;    //without a trailing File.separator!
   private final ObservableList<MediaFile> fileList = FXCollections.observableArrayList();  //the list of files to be shown and edited
@@ -57,16 +75,61 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
   private int counterPosition = 0; //effectively used position (nth number in filenames)entered by user or guessed by heuristic
 
   private final SearchRec searchRec = new SearchRec();
+  private static final String PARALLEL_SEARCH = "MediaFileList_parallelSearch"; //id in global settings
+  private static final int PARALLEL_SEARCH_MIN_ROWS = 2048;  //rows are checked one by one before the rest of the list is scanned in parallel
+  private final boolean parallelSearch;
+  private MediaFileListLoadingTask loadingTask = null; //loads the rest of the folder in background, null if no loading is active
+  private Map<String, WatchEvent.Kind<?>> deferredFolderChanges = null; //changes signalled while loadingTask was running, see onFolderChanged()
+  private Map<String, BasicFileAttributes> deferredFolderSnapshot = null; //snapshot signalled while loadingTask was running, see onFolderSnapshot()
+
+  //adaptive preloading (see preLoadMedia())
+  private static final String PRELOAD_AHEAD = "MediaFileList_preloadAhead";   //id in global settings
+  private static final int DEFAULT_PRELOAD_AHEAD = 4;                          //max number of files preloaded ahead when running through the list
+  private static final long FAST_NAVIGATION_NANOS = 500_000_000L;              //single steps faster than this are treated as "running through the list"
+  private final int maxPreloadAhead;
+  private int lastPreloadIndex = -1;
+  private long lastPreloadTime = 0;
+  private int direction = 1;          //+1=forward, -1=backward
+  private int stepsInDirection = 0;   //number of fast single steps in the same direction
+  private List<MediaFile> preloadWindow = new ArrayList<>(); //files requested by the last preLoadMedia() call
+
+  //index of the filenames on disk of all files in fileList for getMediaFile() and searchPhysicalFilename()
+  //key=lower case filename, value=all files with this name ignoring case (more than one only on case-sensitive file systems)
+  //maintained by a listener of fileList and by fileOnDiskRenamed(). Synchronized, because files are renamed in the saving thread
+  private final Map<String, List<MediaFile>> fileOnDiskIndex = new HashMap<>();
 
   /**
    * constructor
    */
   public MediaFileList() {
+    fileList.addListener((ListChangeListener<MediaFile>) this::updateFileOnDiskIndex);
     resetMediaFileList();
     deletedFileListSizeProperty = Bindings.size(deletedFileList);
+
+    int newMaxPreloadAhead;
+    try {
+      newMaxPreloadAhead = Integer.parseInt(KissPhoto.globalSettings.getProperty(PRELOAD_AHEAD));
+      if (newMaxPreloadAhead < 1) newMaxPreloadAhead = DEFAULT_PRELOAD_AHEAD;
+    } catch (Exception e) {
+      newMaxPreloadAhead = DEFAULT_PRELOAD_AHEAD; //no or invalid setting
+    }
+    maxPreloadAhead = newMaxPreloadAhead;
+
+    boolean newParallelSearch;
+    try {
+      String setting = KissPhoto.globalSettings.getProperty(PARALLEL_SEARCH);
+      newParallelSearch = setting == null || Boolean.parseBoolean(setting.trim());
+    } catch (Exception e) {
+      newParallelSearch = true; //no settings: use the default
+    }
+    parallelSearch = newParallelSearch;
   }
 
   private void resetMediaFileList() {
+    preloadWindow = new ArrayList<>();
+    lastPreloadIndex = -1;
+    deferredFolderChanges = null;
+    deferredFolderSnapshot = null;
     fileList.clear();
     deletedFileList.clear();
     clipboardFileList = null; //i.e. invalid until next cut (see deleteFiles(true))
@@ -86,6 +149,10 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
    * organized as an array list
    * If the file is a file the mediaFileList directory is opened
    * If the file/directory is null or does not exist at all an error-string is returned
+   * <p/>
+   * Only the first entries of the directory are read before returning, so that the table can show them immediately.
+   * The counter position is guessed from the names of these entries (the directory is read only once, important on network drives).
+   * The rest of the folder is added to the fileList in batches by a MediaFileListLoadingTask in background (see getLoadingTask())
    *
    * @param fileOrFolder the file or folder to be loaded
    * @return "" (if everything ok) or Error-Message
@@ -102,59 +169,255 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
 
     //folder successfully determined, now open file list:
     //prepare
+    cancelLoading();
     MediaFile.flushAllMediaFromCache();
     resetMediaFileList();
-    counterPosition = heuristic.guessCounterPosition(folder);
 
-    //read directory
-    try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
-      for (Path file : stream) {
-        if (Files.isRegularFile(file) && !Files.isHidden(file))
-          fileList.add(MediaFile.createMediaFile(file, this));//wrap the file as a MediaFile and specialize it according its media type
+    //read the first chunk of the directory synchronously, the rest in background
+    DirectoryStream<Path> stream = null;
+    try {
+      stream = Files.newDirectoryStream(folder);
+      Iterator<Path> entries = stream.iterator();
+      List<Path> firstChunk = new ArrayList<>(FIRST_CHUNK_SIZE);
+      while (firstChunk.size() < FIRST_CHUNK_SIZE && entries.hasNext())
+        firstChunk.add(entries.next());
+
+      //the MediaFiles parse their names using the counterPosition: guess it before creating them
+      Map<Path, BasicFileAttributes> firstFiles = readFileAttributes(firstChunk);
+      counterPosition = heuristic.guessCounterPosition(firstFiles.keySet().stream().map(file -> file.getFileName().toString()).toList());
+      fileList.addAll(createMediaFiles(firstFiles));
+
+      if (entries.hasNext()) {
+        loadingTask = new MediaFileListLoadingTask(this, stream, entries); //the task closes the stream
+        stream = null;
+        Thread th = new Thread(loadingTask);
+        th.setDaemon(true); //cancel with end of kissPhoto (latest)
+        th.start();
       }
     } catch (IOException | DirectoryIteratorException x) {
       return MessageFormat.format(KissPhoto.language.getString("error.while.reading.directory.0"), x.getMessage());
+    } finally {
+      if (stream != null)
+        try {
+          stream.close();
+        } catch (IOException e) {
+          //nothing to do
+        }
     }
 
     return ""; //no error
   }
 
   /**
-   * This method is called by the FileWatcher.onFolderChanged
-   * If the folder change was external (by another program) the cache will be flushed
-   * to reflect the external changes when displaying media next time
+   * wrap the directory entries as MediaFiles (specialized according their media type)
+   * The attributes of every entry are read only once. Directories and hidden files are skipped.
+   * The MediaFiles are created in parallel, the order of the entries is kept.
+   * This method is thread safe and called from openFolder() and in background from MediaFileListLoadingTask
+   *
+   * @param entries the paths read from the directory
+   * @return list of MediaFiles
    */
-  public void onFolderChanged(String filename, WatchEvent.Kind kind) {
-    if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
-      onFolderChangedAddFile(filename);
+  List<MediaFile> createMediaFiles(List<Path> entries) {
+    return createMediaFiles(readFileAttributes(entries));
+  }
 
-    } else {
-      final MediaFile modifiedFile = getMediaFile(filename);
+  /**
+   * see createMediaFiles(List)
+   *
+   * @param files the files with their attributes (see readFileAttributes())
+   * @return list of MediaFiles in the order of files
+   */
+  private List<MediaFile> createMediaFiles(Map<Path, BasicFileAttributes> files) {
+    return files.entrySet().parallelStream().map(file -> {
+      MediaFile mediaFile = MediaFile.createMediaFile(file.getKey(), file.getValue().lastModifiedTime(), this);
+      mediaFile.setFileSize(file.getValue().size());
+      return mediaFile;
+    }).toList();
+  }
 
-      if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
-        if (modifiedFile != null)
-          fileList.remove(modifiedFile); //not from cache: it will be replaced sooner or later ;-)
+  /**
+   * read the attributes of the directory entries in parallel. Directories, hidden files and entries that cannot be read are skipped
+   *
+   * @param entries the paths read from the directory
+   * @return the regular files with their attributes in the order of entries
+   */
+  private Map<Path, BasicFileAttributes> readFileAttributes(List<Path> entries) {
+    //Windows: hidden is an attribute and can be read together with the other attributes, other OS: hidden means starting with a dot
+    final boolean dosAttributes = folder.getFileSystem().supportedFileAttributeViews().contains("dos");
+
+    List<BasicFileAttributes> attributesList = entries.parallelStream().map(file -> {
+      try {
+        BasicFileAttributes attributes;
+        boolean hidden;
+        if (dosAttributes) {
+          DosFileAttributes dosFileAttributes = Files.readAttributes(file, DosFileAttributes.class);
+          hidden = dosFileAttributes.isHidden();
+          attributes = dosFileAttributes;
+        } else {
+          attributes = Files.readAttributes(file, BasicFileAttributes.class);
+          hidden = Files.isHidden(file); //no disk access, just checking the name
+        }
+        if (attributes.isRegularFile() && !hidden)
+          return attributes;
+      } catch (Exception e) {
+        //nothing to do if file could not be handled: skip it
+      }
+      return null;
+    }).toList(); //same order as entries, null if skipped
 
-      } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
-        if (modifiedFile != null)
-          modifiedFile.flushFromCache();  //mark an existing file as invalid because it has changed
-        else
-          onFolderChangedAddFile(filename);   //generate an non existing file (sometimes CREATE-events were not generated during testing...)
+    Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
+    for (int i = 0; i < entries.size(); i++)
+      if (attributesList.get(i) != null) files.put(entries.get(i), attributesList.get(i));
+    return files;
+  }
+
+  /**
+   * @return the task that has been started by the last openFolder() to load the rest of the folder in background
+   * or null if the folder was read completely in openFolder(). Use it e.g. to be informed when loading has finished
+   */
+  public MediaFileListLoadingTask getLoadingTask() {
+    return loadingTask;
+  }
+
+  /**
+   * stop loading of the current folder in background (if running), e.g. before another folder is opened
+   */
+  public void cancelLoading() {
+    if (loadingTask != null) {
+      loadingTask.cancel();
+      loadingTask = null;
+    }
+  }
+
+  /**
+   * This method is called by the FileTableView.onFolderChanged with a batch of changes signalled by the FileChangeWatcher.
+   * The batch is applied to the fileList as (at most) one removal and one addition, so that the table is updated only twice:
+   * <ul>
+   * <li>deleted files are removed from the list (not from cache: it will be replaced sooner or later ;-)</li>
+   * <li>modified files are flushed from the cache to reflect the external changes when displaying media next time</li>
+   * <li>created files are added to the end of the list, also modified files that are not in the list (sometimes CREATE-events were not generated during testing...),
+   * except files that are marked for deletion (they are on disk until saving).
+   * Directories, hidden files and files that no longer exist (e.g. tmp-files) are ignored (see createMediaFiles())</li>
+   * </ul>
+   * While the folder is still loaded in background the changes are collected and applied when loading has finished,
+   * otherwise a new file could be added twice
+   *
+   * @param changes filename and kind of change (ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE)
+   */
+  public void onFolderChanged(Map<String, WatchEvent.Kind<?>> changes) {
+    if (loadingTask != null && !loadingTask.isDone()) {
+      deferFolderChanges(changes);
+      return;
+    }
+
+    Set<MediaFile> removedFiles = new HashSet<>();
+    List<Path> createdFiles = new ArrayList<>();
+    Set<String> filesToBeDeleted = null; //names of deletedFileList, only collected if needed
+    for (Map.Entry<String, WatchEvent.Kind<?>> change : changes.entrySet()) {
+      String filename = change.getKey();
+      MediaFile mediaFile = getMediaFile(filename);
+      if (change.getValue() == StandardWatchEventKinds.ENTRY_DELETE) {
+        if (mediaFile != null) removedFiles.add(mediaFile);
+      } else if (mediaFile != null) {
+        mediaFile.flushFromCache();  //mark an existing file as invalid because it has changed
+      } else {
+        if (filesToBeDeleted == null) {
+          filesToBeDeleted = new HashSet<>();
+          for (MediaFile deletedFile : deletedFileList) filesToBeDeleted.add(deletedFile.getFileOnDiskName());
+        }
+        if (!filesToBeDeleted.contains(filename)) //still on disk until saving: not a new file
+          createdFiles.add(folder.resolve(filename));
       }
     }
+
+    if (!removedFiles.isEmpty()) fileList.removeAll(removedFiles);
+    if (!createdFiles.isEmpty()) fileList.addAll(createMediaFiles(createdFiles));
   }
 
-  private void onFolderChangedAddFile(String filename) {
-    Path file = getCurrentFolder().resolve(filename);
-    //ignore all directories and hidden files
-    try {
-      if (Files.exists(file) && Files.isRegularFile(file) && !Files.isHidden(file)) {
-        fileList.add(MediaFile.createMediaFile(file, this));//wrap the file as a MediaFile and specialize it according its media type
+  /**
+   * This method is called by the FileTableView.onFolderSnapshot if the changes of the folder are unknown
+   * (events have been lost or watching had been paused, see FileChangeWatcher).
+   * The snapshot is compared with the list and only the differences are applied (instead of reopening the folder):
+   * <ul>
+   * <li>files that are no longer on disk are removed from the list</li>
+   * <li>files with another size or last modified time are flushed from the cache and get the new time stamp</li>
+   * <li>files on disk that are neither in the list nor marked for deletion are added to the end of the list</li>
+   * </ul>
+   * As in onFolderChanged() this results in (at most) one removal and one addition.
+   * While the folder is still loaded in background the snapshot is applied when loading has finished
+   *
+   * @param snapshot filename and attributes of all regular, not hidden files in the folder
+   * @return true if files have been removed or added
+   */
+  public boolean onFolderSnapshot(Map<String, BasicFileAttributes> snapshot) {
+    if (loadingTask != null && !loadingTask.isDone()) {
+      deferUntilLoaded();
+      deferredFolderSnapshot = snapshot;
+      deferredFolderChanges.clear(); //changes signalled before the snapshot are contained in it
+      return false;
+    }
+
+    Set<String> knownFilenames = new HashSet<>();
+    Set<MediaFile> removedFiles = new HashSet<>();
+    for (MediaFile mediaFile : fileList) {
+      String filename = mediaFile.getFileOnDiskName();
+      BasicFileAttributes attributes = snapshot.get(filename);
+      if (attributes == null) {
+        removedFiles.add(mediaFile);
+      } else {
+        knownFilenames.add(filename);
+        if (mediaFile.updateDiskAttributes(attributes)) mediaFile.flushFromCache();
       }
-    } catch (Exception e) {
-      //nothing to do if file could not be handled
     }
+    for (MediaFile mediaFile : deletedFileList) //still on disk until saving
+      knownFilenames.add(mediaFile.getFileOnDiskName());
 
+    List<Path> createdFiles = new ArrayList<>();
+    for (String filename : snapshot.keySet())
+      if (!knownFilenames.contains(filename)) createdFiles.add(folder.resolve(filename));
+    createdFiles.sort(null); //the order of the snapshot is random
+
+    if (!removedFiles.isEmpty()) fileList.removeAll(removedFiles);
+    if (!createdFiles.isEmpty()) fileList.addAll(createMediaFiles(createdFiles));
+    return !removedFiles.isEmpty() || !createdFiles.isEmpty();
+  }
+
+  /**
+   * collect changes while the folder is loaded in background, see onFolderChanged()
+   *
+   * @param changes the changes to be applied when loading has finished
+   */
+  private void deferFolderChanges(Map<String, WatchEvent.Kind<?>> changes) {
+    deferUntilLoaded();
+    changes.forEach((filename, kind) -> {
+      WatchEvent.Kind<?> merged = FileChangeWatcher.mergeKinds(deferredFolderChanges.get(filename), kind);
+      if (merged == null)
+        deferredFolderChanges.remove(filename);
+      else
+        deferredFolderChanges.put(filename, merged);
+    });
+  }
+
+  /**
+   * make sure that the deferred snapshot and changes are applied (in this order) when the loadingTask has finished
+   */
+  private void deferUntilLoaded() {
+    if (deferredFolderChanges == null) {
+      deferredFolderChanges = new LinkedHashMap<>();
+      final MediaFileListLoadingTask task = loadingTask;
+      EventHandler<WorkerStateEvent> applyDeferred = event -> {
+        if (task == loadingTask && deferredFolderChanges != null) { //the folder has not been changed in the meantime
+          Map<String, BasicFileAttributes> snapshot = deferredFolderSnapshot;
+          Map<String, WatchEvent.Kind<?>> deferred = deferredFolderChanges;
+          deferredFolderSnapshot = null;
+          deferredFolderChanges = null;
+          if (snapshot != null) onFolderSnapshot(snapshot);
+          onFolderChanged(deferred);
+        }
+      };
+      task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, applyDeferred);
+      task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, applyDeferred);
+    }
   }
 
   /**
@@ -197,43 +460,74 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
   }
 
   /**
-   * Preload-Strategy: try to put one file before and one after the current position into the cache
+   * Preload-Strategy: try to put the files that will probably be shown next into the cache
    * What to put in cache is determined by the viewer for the media. What is the appropriate viewer selects ContentView
-   * To prevent too many concurrent preloads cancel old preload trials (e.g. if running through FileList by holding cursor down or up):
-   * 0 - cancel preload
-   * 1 - do nothing
-   * 2 - preload
-   * 3 --> current <--
-   * 4 - preload
-   * 5 - do nothing
-   * 6 - cancel preload
+   * <ul>
+   * <li>the navigation direction and speed is tracked: if the user runs through the list in one direction by single steps (cursor keys)
+   * more files are preloaded ahead (the faster the more, see maxPreloadAhead), and none behind (the previous file has just been shown, so it is already cached)
+   * <li>after a jump (or slow stepping) one file before and one after the current position are preloaded
+   * <li>the number of files ahead is limited by the number of media fitting into the cache's budget
+   * <li>the immediately next file is requested first, then the files further ahead, then the one behind.
+   * The decoding priority is: next, behind, further ahead (see ImageDecodeScheduler)
+   * <li>To prevent too many concurrent preloads all preloads of the last window that are no longer in the new window are cancelled
+   * (e.g. if running through FileList by holding cursor down or up)
+   * </ul>
    *
    * @param index the current position in mediaFileList
    * @param contentView selects the appropriate viewer which again knows what to put in cache
    */
   public void preLoadMedia(int index, MediaContentView contentView){
-    MediaFile mediaFile;
-      //Cancel any background loadings except next or next-next / previous or previous-previous
-      if (index > 2) {//if there is a previous/previous/previous, in the example above: index(3) > 2
-        mediaFile = fileList.get(index - 3);
-        if (mediaFile != null) mediaFile.cancelBackgroundLoading();
-      }
-      if (index < fileList.size() - 3) { //if there exists a 'next next next', in the example above index(3) < 4: size(7)-3
-        mediaFile = fileList.get(index + 3);
-        if (mediaFile != null) mediaFile.cancelBackgroundLoading();
-      }
-
-      //preload previous media if necessary async in background
-      if (index > 0) { //if there exists a 'previous'
-        mediaFile = fileList.get(index - 1);
-        contentView.preloadMediaContent(mediaFile);
-      }
-      //preload next media if necessary async. in background
-      if (index < fileList.size() - 1) { //if there exists a 'next'
-        mediaFile = fileList.get(index + 1);
-        contentView.preloadMediaContent(mediaFile);
-      }
+    //track direction and speed
+    long now = System.nanoTime();
+    int step = index - lastPreloadIndex;
+    boolean fast = (now - lastPreloadTime) < FAST_NAVIGATION_NANOS;
+    if (lastPreloadIndex >= 0 && Math.abs(step) == 1 && step == direction && fast) {
+      stepsInDirection++;   //running through the list
+    } else {
+      if (step != 0) direction = Integer.signum(step);  //forward is the default for the first call
+      stepsInDirection = 0; //jump, change of direction or slow stepping
+    }
+    lastPreloadIndex = index;
+    lastPreloadTime = now;
+
+    //determine the window: number of files ahead and behind
+    int ahead = Math.min(1 + stepsInDirection, maxPreloadAhead);
+    int behind = (stepsInDirection > 0) ? 0 : 1;
+    int capacity = MediaFile.getMediaCacheCapacity() - 1 - behind; //-1 for the current file
+    ahead = Math.max(1, Math.min(ahead, capacity));
+
+    //build the window in the order of priority: next, further ahead, behind
+    List<MediaFile> newPreloadWindow = new ArrayList<>(ahead + behind);
+    for (int i = 1; i <= ahead; i++) addToPreloadWindow(newPreloadWindow, index + i * direction);
+    int aheadInWindow = newPreloadWindow.size(); //less than ahead at the end of the list
+    for (int i = 1; i <= behind; i++) addToPreloadWindow(newPreloadWindow, index - i * direction);
+
+    //Cancel any background loading of the old window that is no longer needed
+    MediaFile current = (index >= 0 && index < fileList.size()) ? fileList.get(index) : null;
+    for (MediaFile mediaFile : preloadWindow) {
+      if (mediaFile != current && !newPreloadWindow.contains(mediaFile))
+        mediaFile.cancelBackgroundLoading();
+    }
+    preloadWindow = newPreloadWindow;
+
+    //preload async in background: the next file is decoded before the previous one and both before the files further ahead
+    for (int i = 0; i < preloadWindow.size(); i++) {
+      ImageDecodeScheduler.Priority priority;
+      if (i >= aheadInWindow)
+        priority = ImageDecodeScheduler.Priority.PREVIOUS;
+      else if (i == 0)
+        priority = ImageDecodeScheduler.Priority.NEXT;
+      else
+        priority = ImageDecodeScheduler.Priority.SPECULATIVE;
+      contentView.preloadMediaContent(preloadWindow.get(i), priority);
+    }
+  }
 
+  private void addToPreloadWindow(List<MediaFile> window, int index) {
+    if (index >= 0 && index < fileList.size()) {
+      MediaFile mediaFile = fileList.get(index);
+      if (mediaFile != null) window.add(mediaFile);
+    }
   }
 
   /**
@@ -342,23 +636,25 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
   }
 
   /**
-   * lookup the filename in the file names on disk ("the original names")
+   * lookup the filename in the file names on disk ("the original names"), ignoring case.
+   * This is a lookup in the index of the filenames (no search in the list): use fileList.indexOf() only if the position is needed
    *
    * @param filename the filename to search for
-   * @return the index or -1 if not found
+   * @return the mediaFile (an exact match is preferred if several names differ in case only) or null if not found
    */
-  public int searchPhysicalFilename(String filename) {
-    int i = 0;
-    boolean found = false;
-    while (i < fileList.size() && !found) {
-      found = (filename.compareToIgnoreCase(fileList.get(i).getFileOnDisk().getFileName().toString()) == 0);
-      i++;
-    }
-    if (found) {
-      return i - 1;  //in the while loop there was one extra i++ after it has been found
-    } else {
-      return -1;
+  public MediaFile searchPhysicalFilename(String filename) {
+    MediaFile found = null;
+    synchronized (fileOnDiskIndex) {
+      List<MediaFile> candidates = fileOnDiskIndex.get(indexKey(filename));
+      if (candidates != null) {
+        for (MediaFile mediaFile : candidates) {
+          String fileOnDiskName = mediaFile.getFileOnDiskName();
+          if (fileOnDiskName.equals(filename)) return mediaFile;
+          if (found == null && fileOnDiskName.equalsIgnoreCase(filename)) found = mediaFile;
+        }
+      }
     }
+    return found;
   }
 
   /**
@@ -394,6 +690,9 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
    * If this method is called without previous initSearch the search starts from any last finding position or from the start of the table
    * <p/>
    * this method just sets the search Cursors and is used by findNext and replaceAll
+   * <p/>
+   * Rows that do not contain the search text are skipped quickly (see nextRowContaining()), so that
+   * find/replace in folders with many thousand files stays interactive
    *
    * @param searchText the text to be found in the file table
    * @return true if found, false if not found
@@ -408,10 +707,11 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
     }
 
     searchRec.found = false; //init a new search loop
+    String lowerCaseSearchText = searchRec.compile(searchText);
     //search the complete list until next occurrence or end of list
     while (!searchRec.found && searchRec.tableRow < listToSearchIn.size()) {
       if (!listToSearchIn.get(searchRec.tableRow).searchNext(searchText, searchRec)) {
-        searchRec.tableRow++;                            //try next line
+        searchRec.tableRow = nextRowContaining(listToSearchIn, searchRec.tableRow + 1, lowerCaseSearchText); //try next line with an occurrence
         searchRec.tableColumn = MediaFile.COL_PREFIX; //start in every line with the first column
         searchRec.startPos = 0;                          //and with the beginning of the text
         searchRec.endPos = 0;
@@ -421,6 +721,31 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
     return searchRec.found;
   }
 
+  /**
+   * find the next row containing the search text in any column.
+   * The next PARALLEL_SEARCH_MIN_ROWS rows are checked one by one (replaceAll mostly finds the next occurrence nearby),
+   * the rest of the list is scanned in parallel chunks (if not switched off in the global settings: MediaFileList_parallelSearch=false)
+   *
+   * @param list                the list to search in
+   * @param fromRow             the first row to be checked
+   * @param lowerCaseSearchText the compiled search text
+   * @return the index of the row or list.size() if no further row contains the search text
+   */
+  private int nextRowContaining(List<MediaFile> list, int fromRow, String lowerCaseSearchText) {
+    int row = fromRow;
+    int sequentialEnd = parallelSearch ? Math.min(list.size(), fromRow + PARALLEL_SEARCH_MIN_ROWS) : list.size();
+    while (row < sequentialEnd) {
+      if (list.get(row).containsSearchText(lowerCaseSearchText)) return row;
+      row++;
+    }
+    if (row >= list.size()) return list.size();
+
+    //every row is checked by one thread only, findFirst() returns the smallest matching row
+    return IntStream.range(row, list.size()).parallel()
+      .filter(i -> list.get(i).containsSearchText(lowerCaseSearchText))
+      .findFirst().orElse(list.size());
+  }
+
   /**
    * initSearch() needs to be called before a call to replaceAll()!! Otherwise not all occurrences will be replaced
    * <p/>
@@ -465,15 +790,69 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
    * @return and return the mediaFile if found, null if not
    */
   public MediaFile getMediaFile(String filename) {
-    MediaFile foundMediaFile = null;
+    synchronized (fileOnDiskIndex) {
+      List<MediaFile> candidates = fileOnDiskIndex.get(indexKey(filename));
+      if (candidates != null) {
+        for (MediaFile mediaFile : candidates) {
+          if (mediaFile.getFileOnDiskName().equals(filename))
+            return mediaFile;
+        }
+      }
+    }
+    return null;
+  }
 
-    for (MediaFile mediaFile : fileList) {
-      if (mediaFile.getFileOnDiskName().equals(filename)) {
-        foundMediaFile = mediaFile;
-        break;
+  /**
+   * @param filename filename on disk
+   * @return the key of fileOnDiskIndex for filename
+   */
+  private static String indexKey(String filename) {
+    return filename.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * keep fileOnDiskIndex in sync with fileList (listener of fileList): all changes of the list pass here
+   * (loading, external changes, deleting, undeleting, moving, ...)
+   *
+   * @param change the change of fileList
+   */
+  private void updateFileOnDiskIndex(ListChangeListener.Change<? extends MediaFile> change) {
+    synchronized (fileOnDiskIndex) {
+      while (change.next()) {
+        if (change.wasPermutated()) continue; //sorting does not change the index
+        for (MediaFile mediaFile : change.getRemoved())
+          removeFromFileOnDiskIndex(mediaFile, mediaFile.getFileOnDiskName());
+        for (MediaFile mediaFile : change.getAddedSubList())
+          fileOnDiskIndex.computeIfAbsent(indexKey(mediaFile.getFileOnDiskName()), key -> new ArrayList<>(1)).add(mediaFile);
       }
     }
-    return foundMediaFile;
+  }
+
+  /**
+   * @param mediaFile      the file to remove from fileOnDiskIndex
+   * @param fileOnDiskName the name it is indexed with
+   * @return true if it had been in the index
+   */
+  private boolean removeFromFileOnDiskIndex(MediaFile mediaFile, String fileOnDiskName) {
+    String key = indexKey(fileOnDiskName);
+    List<MediaFile> mediaFiles = fileOnDiskIndex.get(key);
+    if (mediaFiles == null || !mediaFiles.remove(mediaFile)) return false;
+    if (mediaFiles.isEmpty()) fileOnDiskIndex.remove(key);
+    return true;
+  }
+
+  /**
+   * called by MediaFile when it has been renamed on disk (e.g. while saving, i.e. possibly not in the GUI thread)
+   * to keep fileOnDiskIndex in sync
+   *
+   * @param mediaFile the renamed file
+   * @param oldName   its previous filename on disk
+   */
+  void fileOnDiskRenamed(MediaFile mediaFile, String oldName) {
+    synchronized (fileOnDiskIndex) {
+      if (removeFromFileOnDiskIndex(mediaFile, oldName)) //files not in fileList (e.g. deleted ones) are not indexed
+        fileOnDiskIndex.computeIfAbsent(indexKey(mediaFile.getFileOnDiskName()), key -> new ArrayList<>(1)).add(mediaFile);
+    }
   }
 
   /**
@@ -665,5 +1044,23 @@ public class MediaFileList { //should extend ObservableList, but JavaFx only pro
     //the core modalResult ;-)
     public MediaFile foundMediaFile = null;
     public boolean found = false;
+
+    //the search text compiled for comparing with the lower case shadows of the MediaFiles (see compile())
+    private String searchText = null;
+    private String lowerCaseSearchText = null;
+
+    /**
+     * the search text is converted only once (and not for every comparison) as long as it is not changed
+     *
+     * @param searchText the text to be found
+     * @return the search text in lower case for the case-insensitive search
+     */
+    String compile(String searchText) {
+      if (!searchText.equals(this.searchText)) {
+        this.searchText = searchText;
+        lowerCaseSearchText = searchText.toLowerCase();
+      }
+      return lowerCaseSearchText;
+    }
   }
 }
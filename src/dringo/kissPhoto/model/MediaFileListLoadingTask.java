@@ -0,0 +1,88 @@
+package dringo.kissPhoto.model;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ *
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br>
+ * Here the rest of a folder is loaded in background after MediaFileList.openFolder() has already shown the first files.
+ * Especially on network drives with many thousand files reading the directory takes long, so
+ * <ul>
+ * <li>the remaining directory entries are collected in batches
+ * <li>the MediaFile objects of a batch are created in parallel (see MediaFileList.createMediaFiles())
+ * <li>every batch is added to the fileList as one single change in the GUI thread
+ * </ul>
+ * The task respects cancelling (e.g. if another folder is opened before loading has finished)
+ * Returns the number of files added by this task
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public class MediaFileListLoadingTask extends Task<Integer> {
+  static final int BATCH_SIZE = 500; //number of directory entries that are published to the fileList at once
+
+  private final MediaFileList mediaFileList;
+  private final DirectoryStream<Path> stream;   //is closed by this task
+  private final Iterator<Path> remainingEntries;  //the first entries have already been consumed by openFolder()
+
+  /**
+   * @param mediaFileList    the list to be filled
+   * @param stream           the open directory stream, that will be closed when loading has finished
+   * @param remainingEntries the iterator of the stream that has already been used for reading the first files
+   */
+  MediaFileListLoadingTask(MediaFileList mediaFileList, DirectoryStream<Path> stream, Iterator<Path> remainingEntries) {
+    this.mediaFileList = mediaFileList;
+    this.stream = stream;
+    this.remainingEntries = remainingEntries;
+  }
+
+  @Override
+  protected Integer call() throws Exception {
+    int count = 0;
+    List<Path> batch = new ArrayList<>(BATCH_SIZE);
+
+    try {
+      while (!isCancelled() && remainingEntries.hasNext()) {
+        batch.add(remainingEntries.next());
+        if (batch.size() >= BATCH_SIZE || !remainingEntries.hasNext()) {
+          count += publish(mediaFileList.createMediaFiles(batch));
+          batch = new ArrayList<>(BATCH_SIZE);
+        }
+      }
+    } catch (Exception e) {
+      //nothing to do: the files read so far remain in the list (e.g. network drive disconnected while loading)
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        //nothing to do
+      }
+    }
+    return count;
+  }
+
+  /**
+   * add the mediaFiles to the fileList in the GUI thread (listeners of the fileList update the UI)
+   * if the task has been cancelled in between (another folder opened) the files are no longer added
+   *
+   * @param mediaFiles the files to add
+   * @return number of files handed over to the GUI thread
+   */
+  private int publish(List<MediaFile> mediaFiles) {
+    if (!mediaFiles.isEmpty())
+      Platform.runLater(() -> {
+        if (!isCancelled()) mediaFileList.getFileList().addAll(mediaFiles);
+      });
+    return mediaFiles.size();
+  }
+}
@@ -5,6 +5,14 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * MIT License
  * Copyright (c)2021 kissPhoto
@@ -16,9 +24,14 @@ import javafx.concurrent.Task;
  * GUI will not freeze.
  * The task communicates with the progress bar in the status bar and respects cancelling
  * Returns the number of Errors while saving
+ * <p>
+ * The content of every file (transformation, meta tags) is independent of all other files, so all content rewrites are done first
+ * by a small pool of worker threads in parallel. Renaming and timestamps depend on the order of the files (see call()) and are done afterwards
+ * in the order of the list.
  *
  * @author Dringo
  * @since 2018-09-22
+ * @version 2026-10-17 content rewrites (rotation, meta tags) in parallel before the ordered renaming
  * @version 2020-12-20 media cache moved to MediaFile, therefore no pointer to MediaCache needed anymore
  * @version 2018-11-17 housekeeping
  */
@@ -27,9 +40,14 @@ public class MediaFileListSavingTask extends Task<Integer> {
   private final ObservableList<MediaFile> deletedFileList;
   private final ObservableList<MediaFile> fileList;
   private final int numberOfChangesToSave;
+  private int totalSteps; //numberOfChangesToSave + number of content rewrites
+
+  //every worker holds a complete jpg in memory (all DCT coefficients) while rewriting, so the number of workers is limited
+  private static final int MAX_REWRITE_WORKERS = 4;
 
   public MediaFileListSavingTask(ObservableList<MediaFile> deletedFileList, ObservableList<MediaFile> fileList, int numberOfChangesToSave) {
     this.numberOfChangesToSave = numberOfChangesToSave;
+    this.totalSteps = numberOfChangesToSave;
     this.fileList = fileList;
     this.deletedFileList = deletedFileList;
   }
@@ -47,6 +65,9 @@ public class MediaFileListSavingTask extends Task<Integer> {
    * </ul>
    * If the second loop also is not successful (e.g. the fail was because of invalid name or write protect) the
    * file remains unchanged and it's status is marked as "rename error" (see MediaFile.performRename())
+   * <p>
+   * Before the renaming loops all content rewrites (transformations, meta tags) are performed in parallel (see rewriteContentInParallel()).
+   * The files are rewritten under their old name (fileOnDisk), so this does not interfere with renaming.
    *
    * @return 0 if successful or >0 = the number of errors occurred
    */
@@ -62,7 +83,7 @@ public class MediaFileListSavingTask extends Task<Integer> {
       ObservableList<MediaFile> deletedListCopy = FXCollections.observableArrayList(deletedFileList); //copy list for iteration
       for (MediaFile mediaFile : deletedListCopy) {
         step++;
-        updateProgress(step, numberOfChangesToSave);
+        updateProgress(step, totalSteps);
 
         mediaFile.flushFromCache();
 
@@ -83,12 +104,24 @@ public class MediaFileListSavingTask extends Task<Integer> {
 
       }
 
+      //rewrite the content of all files in parallel (independent of each other), renaming follows in the order of the list
+      if (!isCancelled()) {
+        List<MediaFileTaggedEditable> contentChangedFiles = new ArrayList<>();
+        for (MediaFile mediaFile : fileList) {
+          if (mediaFile instanceof MediaFileTaggedEditable taggedEditable && taggedEditable.needsContentRewrite())
+            contentChangedFiles.add(taggedEditable);
+        }
+        totalSteps = numberOfChangesToSave + contentChangedFiles.size();
+        errorCount += rewriteContentInParallel(contentChangedFiles, step);
+        step += contentChangedFiles.size();
+      }
+
       //first loop for renaming and the only loop for all other changes
       if (!isCancelled()) {
         for (MediaFile mediaFile : fileList) {
           if (mediaFile.isChanged()) {
             step++;
-            updateProgress(step, numberOfChangesToSave);
+            updateProgress(step, totalSteps);
             try {
               //give the GUI-Thread a chance to update the progressBar and Cancel-Button
               Thread.sleep(1);
@@ -108,11 +141,11 @@ public class MediaFileListSavingTask extends Task<Integer> {
       //if secondTryNecessary>0 after first loop: in worst case all files (but one) have intermediate filenames now
       if (!isCancelled()) {
         if (secondTryNecessary > 0) {
-          step = 0;
+          step = totalSteps - numberOfChangesToSave; //content has already been saved
           for (MediaFile mediaFile : fileList) {
             if (mediaFile.isChanged()) {
               step++;
-              updateProgress(step, numberOfChangesToSave);
+              updateProgress(step, totalSteps);
               try {
                 //give the GUI-Thread a chance to update the progressBar and Cancel-Button
                 Thread.sleep(10);
@@ -137,4 +170,45 @@ public class MediaFileListSavingTask extends Task<Integer> {
     return errorCount;
   }
 
-}
\ No newline at end of file
+  /**
+   * rewrite the content (transformations, meta tags) of the files by a small pool of worker threads
+   * progress is updated whenever a file is finished.
+   * If the task is cancelled the waiting files are not rewritten anymore, but the running rewrites are completed
+   * (a file must never be left half written)
+   *
+   * @param files     the files to be rewritten
+   * @param stepsDone the progress before rewriting
+   * @return the number of errors
+   */
+  private int rewriteContentInParallel(List<MediaFileTaggedEditable> files, int stepsDone) {
+    if (files.isEmpty()) return 0;
+
+    int errorCount = 0;
+    int workers = Math.min(files.size(), Math.max(1, Math.min(MAX_REWRITE_WORKERS, Runtime.getRuntime().availableProcessors() - 1)));
+    ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+      Thread th = new Thread(runnable, "kissPhoto saving");
+      th.setDaemon(true); //cancel with end of kissPhoto (latest)
+      return th;
+    });
+    CompletionService<Boolean> completionService = new ExecutorCompletionService<>(pool);
+
+    try {
+      for (MediaFileTaggedEditable file : files) {
+        completionService.submit(() -> isCancelled() || file.saveContentChanges()); //a cancelled file is not rewritten, and that is no error
+      }
+      for (int i = 0; i < files.size(); i++) {
+        try {
+          if (!completionService.take().get()) errorCount++;
+        } catch (ExecutionException e) {
+          errorCount++;
+        }
+        updateProgress(stepsDone + i + 1, totalSteps);
+      }
+    } catch (InterruptedException e) {
+      //cancelled: remaining files check isCancelled() and are skipped
+    } finally {
+      pool.shutdown(); //running rewrites are completed, threads end afterwards
+    }
+    return errorCount;
+  }
+}
@@ -9,6 +9,7 @@ import dringo.kissPhoto.model.Metadata.MetaInfoTreeItem;
 import dringo.kissPhoto.view.MetaInfoAllTagsView;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 
 /**
  * MIT License
@@ -20,6 +21,7 @@ import java.nio.file.Path;
  *
  *
  * @author Dringo
+ * @version 2026-10-17 constructor takes lastModified from folder scan
  * @version 2021-11-07 metainfo column support (="" if not MediaFileTagged), reflection for FileTableView eliminated
  * @version 2021-04-07 metaInfoView supported. Cache support completed
  * @version 2017-10-28 updated to latest metadata-extractor version. Now I use source instead of jar because drew noaks does not deliver jar for latest version
@@ -31,8 +33,8 @@ public abstract class MediaFileTagged extends MediaFile {
   protected MetaInfoTreeItem metaInfoTreeItem = null; //cached metaInfo root?
   MetaInfoProperty metaInfoProperty = new MetaInfoProperty();
 
-  protected MediaFileTagged(Path file, MediaFileList parent) {
-    super(file, parent);
+  protected MediaFileTagged(Path file, MediaFileList parent, FileTime lastModified) {
+    super(file, parent, lastModified);
     //metadata = null; //lazy load: load it when getMetaData is called
   }
 
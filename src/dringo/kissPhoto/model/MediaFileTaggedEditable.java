@@ -1,5 +1,6 @@
 package dringo.kissPhoto.model;
 
+import dringo.kissPhoto.KissPhoto;
 import dringo.kissPhoto.model.Metadata.EditableItem.EditableMetaInfoItem;
 import dringo.kissPhoto.model.Metadata.EditableItem.EditableMetaInfoTreeItem;
 import dringo.kissPhoto.model.Metadata.EditableItem.EditableRootItem;
@@ -12,10 +13,11 @@ import mediautil.image.jpeg.Exif;
 import mediautil.image.jpeg.LLJTran;
 import mediautil.image.jpeg.LLJTranException;
 
-import java.io.BufferedOutputStream;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.text.MessageFormat;
 
 import static dringo.kissPhoto.KissPhoto.language;
@@ -30,6 +32,14 @@ import static dringo.kissPhoto.KissPhoto.language;
  *
  * @author Dringo
  * @since 2021-11-13
+ * @version 2026-10-17 restart markers for every MCU row of images transformed in memory: encoded in parallel (global setting, default off)
+ * @version 2026-10-17 optimized Huffman tables for images transformed in memory (global setting, default on)
+ * @version 2026-10-17 files are replaced crash safe via FileRewriter instead of being overwritten
+ * @version 2026-10-17 only the header is rewritten if only meta tags have changed (LLJTran.xferInfo)
+ * @version 2026-10-17 flips and 180° rotation are performed while reading (LLJTran.transformStreaming)
+ * @version 2026-10-17 rotation and flips are combined into a single transformation
+ * @version 2026-10-17 saveContentChanges() separated from saveChanges() for parallel saving
+ * @version 2026-10-17 constructor takes lastModified from folder scan
  * @version 2022-01-01 first working version
  */
 
@@ -38,10 +48,15 @@ public abstract class MediaFileTaggedEditable extends MediaFileTagged {
   boolean supportedFile; //currently, only JPG-Files are supported for writing tags. Set in constructor and corrected when read via readExifHeader() or saveChanges()
   ObservableList<EditableMetaInfoItem> changedMetaTags = null; //find all changed meta tags in one list for saving and showing that the file has been changed. lazy generation in addChangedTag()
 
+  //correct orientation + Default= OPT_WRITE_ALL|OPT_XFORM_APPX | OPT_XFORM_ADJUST_EDGES (i.e correct the edges if resolution is not multiple of 8x8)
+  private static final int TRANSFORM_OPTIONS = LLJTran.OPT_DEFAULTS | LLJTran.OPT_XFORM_ORIENTATION;// |LLJTran.OPT_XFORM_THUMBNAIL;
+  private static final String OPTIMIZE_HUFFMAN_TABLES = "MediaFileTaggedEditable_optimizeHuffmanTables"; //id in global settings: false=keep the camera's Huffman tables
+  private static final String RESTART_MARKERS = "MediaFileTaggedEditable_restartMarkers"; //id in global settings: true=restart markers (opt-in)
+
   protected EditableMetaInfoTreeItem rootTreeItem; //cached editableMetaInfo root. As soon as needed for the first time it is loaded by getMetaInfoCached();
 
-  protected MediaFileTaggedEditable(Path file, MediaFileList parent) {
-    super(file, parent);
+  protected MediaFileTaggedEditable(Path file, MediaFileList parent, FileTime lastModified) {
+    super(file, parent, lastModified);
     supportedFile = (getExtension().equalsIgnoreCase(".jpg")) || (getExtension().equalsIgnoreCase(".jpeg"));
   }
 
@@ -129,6 +144,23 @@ public abstract class MediaFileTaggedEditable extends MediaFileTagged {
     return s;
   }
 
+  /**
+   * rotation, then flips are combined into one transformation, so that the image is transformed in one pass only
+   *
+   * @return the LLJTran operation (LLJTran.NONE...LLJTran.ROT_270) which performs all planned transformations
+   */
+  private int getTransformationOperation() {
+    int rotation = switch (rotateOperation) {
+      case ROTATE90 -> LLJTran.ROT_90;
+      case ROTATE180 -> LLJTran.ROT_180;
+      case ROTATE270 -> LLJTran.ROT_270;
+      default -> LLJTran.NONE;
+    };
+    return LLJTran.combineTransformations(rotation,
+      flipHorizontally ? LLJTran.FLIP_H : LLJTran.NONE,
+      flipVertically ? LLJTran.FLIP_V : LLJTran.NONE);
+  }
+
   /**
    * if canRotate() (currently only for JPEG-Images)
    * transformations (rotation, flipping) are performed during saveChanges() using mediaUtil
@@ -143,20 +175,9 @@ public abstract class MediaFileTaggedEditable extends MediaFileTagged {
 
     if (canTransformInFile()) {
       try {
-        int options = LLJTran.OPT_DEFAULTS | LLJTran.OPT_XFORM_ORIENTATION;// |LLJTran.OPT_XFORM_THUMBNAIL;  //correct orientation + Default= OPT_WRITE_ALL|OPT_XFORM_APPX | OPT_XFORM_ADJUST_EDGES (i.e correct the edges if resolution is not multiple of 8x8)
-        int op = switch (rotateOperation) {
-          case ROTATE90 -> LLJTran.ROT_90;
-          case ROTATE180 -> LLJTran.ROT_180;
-          case ROTATE270 -> LLJTran.ROT_270;
-          default -> 0;
-        };
-        llj.transform(op, options);
-
-        if (flipHorizontally) {
-          llj.transform(LLJTran.FLIP_H, options);
-        }
-        if (flipVertically) {
-          llj.transform(LLJTran.FLIP_V, options);
+        int op = getTransformationOperation();
+        if (op != LLJTran.NONE) { //e.g. flipping horizontally and vertically and rotating by 180° results in the original image
+          llj.transform(op, TRANSFORM_OPTIONS);
         }
         successful = true;
       } catch (Exception e) {
@@ -196,107 +217,212 @@ public abstract class MediaFileTaggedEditable extends MediaFileTagged {
 
   }
 
+  /**
+   * @return true if the content of the file on disk needs to be rewritten by saveContentChanges(), i.e. it is a supported file and
+   * it has been transformed or its meta tags have been changed
+   */
+  public boolean needsContentRewrite() {
+    return supportedFile && (isTransformed() || isMetaDataChanged());
+  }
+
   /**
    * the changes made in the metaTags and the transformations (rotate, flip) are applied to the file on disk.
    * <ul>
-   * <li>if not is supportedFile nothing happens
-   * <li>if not isTransformed() nor isMetaDataChanged() nothing happens
+   * <li>if not needsContentRewrite() nothing happens
    * </ul>
-   * note: the changes of the ancestors will be applied in any case
-   * <p>
-   * A backup-file is put into the deleted folder before the changes are applied
+   * This is only the content of this one file (no renaming, no timestamp), so it is independent of all other files
+   * and MediaFileListSavingTask calls this for many files in parallel before saveChanges() is called in the order of the list.
+   * saveChanges() calls this too, so it does not matter if it has been called before: the transformations and changed tags are reset
+   * after rewriting, so the second call does nothing (also if the rewrite failed).
    *
-   * @return <ul>
-   * <li>SaveResult.SUCCESSFUL if successful</li>
-   * <li>SaveResult.NEEDS_2ND_TRY if an intermediate filename has been given and a second run is necessary</li>
-   * <li>SaveResult.ERROR if another error has occurred (e.g. write protect/access denied etc)</li>
-   * </ul>
+   * @return true if successful or nothing to do
    */
-  @Override
-  public SaveResult saveChanges() {
+  public boolean saveContentChanges() {
+    if (needsContentRewrite())
+      return rewriteContent();
+    else
+      return true;
+  }
+
+  /**
+   * rewrite the file on disk with the transformations and changed meta tags
+   *
+   * @return true if successful
+   */
+  private boolean rewriteContent() {
     boolean successful = true;
     LLJTran llj;
 
-    if (supportedFile && (isTransformed() || isMetaDataChanged())) {
-      llj = new LLJTran(fileOnDisk.toFile());
+    int op = (isTransformed() && canTransformInFile()) ? getTransformationOperation() : LLJTran.NONE;
+    //only meta tags changed (or transformations cancel each other out): the image data is copied as is, only the header is written
+    boolean headerOnly = op == LLJTran.NONE;
+    //flips and 180° rotation keep the rows of the image: they are performed while reading, so that only some rows are in memory
+    boolean streaming = !headerOnly && LLJTran.canTransformStreaming(op);
+
+    llj = new LLJTran(fileOnDisk.toFile());
+    try {
+      llj.read((headerOnly || streaming) ? LLJTran.READ_HEADER : LLJTran.READ_ALL, true);
+    } catch (LLJTranException e) {
+      successful = false;
+      supportedFile = false;
+    }
+
+    if (successful) { //no error occurred during opening --> llj is valid
+      AbstractImageInfo<?> imageInfo = llj.getImageInfo();
+      Exif exifHeader = null;
+
+      //try to use the existing header
+      if (imageInfo instanceof Exif) {  //includes test of not null
+        exifHeader = (Exif) imageInfo;
+      } else { //was not included
+        //we need at least a dummy exif header
+        //generate an empty Exif (will only be written if a tag has been changed later by the user
+        llj.addAppx(LLJTran.dummyExifHeader, 0, LLJTran.dummyExifHeader.length, true);
+        exifHeader = (Exif) llj.getImageInfo();
+      }
+
+      //transform using MediaUtil
+      boolean wasTransformed = isTransformed();
+      if (wasTransformed) {
+        if (!streaming) successful = performTransformation(llj); //else while saving (nothing to do if headerOnly)
+
+        //above transformation has changed timestamp in filesystem
+        setTimeStampChanged(true); //to reset to the previous timestamp if it was not already timeStampChanged
+      }
+
+      //llj.setComment("kissPhoto rotation/meta tags changed");
+
+      //save all changed metaTags
+      if (changedMetaTags != null) {
+        for (EditableMetaInfoItem tag : changedMetaTags) {
+          if (tag instanceof EditableTagItem)
+            ((EditableTagItem) tag).saveToExifHeader(exifHeader); //only tags can be edited (not directories not the root)
+        }
+        //write all changes back to the APPx-buffers
+        llj.refreshAppx();
+      }
+
+      //save the file = write new header and transformations
       try {
-        llj.read(LLJTran.READ_ALL, true);
-      } catch (LLJTranException e) {
+        //the new file is written next to the file on disk and replaces it atomically when complete (see FileRewriter)
+        if (headerOnly) {
+          llj.closeInternalInputStream();
+          FileRewriter.replace(fileOnDisk, out -> {
+            try (FileChannel in = FileChannel.open(fileOnDisk, StandardOpenOption.READ)) {
+              llj.xferInfo(in, out, LLJTran.REPLACE, LLJTran.RETAIN); //new appxs (Exif), the rest of the file is copied
+            }
+          });
+        } else if (streaming) {
+          FileRewriter.replace(fileOnDisk, out -> {
+            try (OutputStream outStream = FileRewriter.newOutputStream(out)) {
+              llj.transformStreaming(outStream, op, TRANSFORM_OPTIONS | LLJTran.OPT_WRITE_ALL); //closes the file that has been read
+            }
+          });
+        } else {
+          int saveOptions = LLJTran.OPT_WRITE_ALL | (isOptimizeHuffmanTables() ? LLJTran.OPT_WRITE_OPTIMIZE_HUFF : 0);
+          int restartInterval = isRestartMarkers() ? llj.getWidthInMCU() : 0; //one interval per MCU row of the transformed image
+          FileRewriter.replace(fileOnDisk, out -> {
+            try (OutputStream outStream = FileRewriter.newOutputStream(out)) {
+              llj.save(outStream, saveOptions, restartInterval);
+            }
+          });
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
         successful = false;
-        supportedFile = false;
+        //supportedFile is only changed during reading
+      } finally {
+        llj.freeMemory();
       }
 
-      if (successful) { //no error occurred during opening --> llj is valid
-        AbstractImageInfo<?> imageInfo = llj.getImageInfo();
-        Exif exifHeader = null;
-
-        //try to use the existing header
-        if (imageInfo instanceof Exif) {  //includes test of not null
-          exifHeader = (Exif) imageInfo;
-        } else { //was not included
-          //we need at least a dummy exif header
-          //generate an empty Exif (will only be written if a tag has been changed later by the user
-          llj.addAppx(LLJTran.dummyExifHeader, 0, LLJTran.dummyExifHeader.length, true);
-          exifHeader = (Exif) llj.getImageInfo();
-        }
+      //if not successful the file on disk is unchanged (see FileRewriter): keep the changes for the next try
+      //--successful: reset transformations
+      if (successful && wasTransformed) {
+        resetTransformations();
+      }
 
-        //transform using MediaUtil
-        boolean wasTransformed = isTransformed();
-        if (wasTransformed) {
-          successful = performTransformation(llj);
+      flushFromCache(); //the file needs to be read again
 
-          //above transformation has changed timestamp in filesystem
-          setTimeStampChanged(true); //to reset to the previous timestamp if it was not already timeStampChanged
+      //--successful: reset all changes in the EditableTagItem
+      if (successful && changedMetaTags != null) {
+        for (EditableMetaInfoItem tag : changedMetaTags) {
+          if (tag instanceof EditableTagItem) //only tags can be edited (not directories not the root)
+            ((EditableTagItem) tag).changesHaveBeenWritten();
         }
+        changedMetaTags = null; //list is now no longer necessary
+      }
+      updateStatusProperty();
 
-        //llj.setComment("kissPhoto rotation/meta tags changed");
+    } else { //not a supported file = error during opening
+      successful = false;
+    }
+    return successful;
+  }
 
-        //save all changed metaTags
-        if (changedMetaTags != null) {
-          for (EditableMetaInfoItem tag : changedMetaTags) {
-            if (tag instanceof EditableTagItem)
-              ((EditableTagItem) tag).saveToExifHeader(exifHeader); //only tags can be edited (not directories not the root)
-          }
-          //write all changes back to the APPx-buffers
-          llj.refreshAppx();
-        }
+  /**
+   * Images that are transformed in memory (rotation by 90°/270°, transpose, transverse) are written with Huffman tables
+   * optimized for the image instead of the camera's generic tables: the files get smaller without any loss.
+   * This needs all coefficients, so it is not possible if the image is written while reading (flips, 180°) or if only the header is written.
+   * It can be switched off in the global settings (MediaFileTaggedEditable_optimizeHuffmanTables=false)
+   *
+   * @return true if the Huffman tables are to be optimized when saving
+   */
+  private static boolean isOptimizeHuffmanTables() {
+    return isGlobalSettingOn(OPTIMIZE_HUFFMAN_TABLES);
+  }
 
-        //save the file = write new header and transformations
-        try {
-          OutputStream out = new BufferedOutputStream(new FileOutputStream(getFileOnDisk().toFile()));
-          llj.save(out, LLJTran.OPT_WRITE_ALL);
-
-          out.close();
-        } catch (Exception e) {
-          e.printStackTrace();
-          successful = false;
-          //supportedFile is only changed during reading
-        } finally {
-          llj.freeMemory();
-        }
-        //successful = true
+  /**
+   * Images that are transformed in memory are written with a restart marker after every MCU row (i.e. every 8 or 16 pixel rows).
+   * The restart intervals are independent of each other, so LLJTran encodes them in parallel while saving
+   * and decodes them in parallel when the file is read the next time. This costs only a few bytes per row.
+   * As this changes the structure of the user's files (and not every other program profits from it)
+   * it has to be switched on in the global settings (MediaFileTaggedEditable_restartMarkers=true)
+   *
+   * @return true if restart markers are to be written when saving
+   */
+  private static boolean isRestartMarkers() {
+    return isGlobalSettingOn(RESTART_MARKERS, false);
+  }
 
-        //--successful: reset transformations
-        if (wasTransformed) {
-          resetTransformations();
-        }
+  /**
+   * @param id of the setting in the global settings
+   * @return false only if the setting is false, true if it is true or missing
+   */
+  private static boolean isGlobalSettingOn(String id) {
+    return isGlobalSettingOn(id, true);
+  }
 
-        flushFromCache(); //the file needs to be read again
+  /**
+   * @param id           of the setting in the global settings
+   * @param defaultValue is returned if the setting is missing
+   * @return true if the setting is true, false if it is false, defaultValue if it is missing
+   */
+  private static boolean isGlobalSettingOn(String id, boolean defaultValue) {
+    try {
+      String setting = KissPhoto.globalSettings.getProperty(id);
+      return setting == null ? defaultValue : Boolean.parseBoolean(setting.trim());
+    } catch (Exception e) {
+      return defaultValue; //no settings: use the default
+    }
+  }
 
-        //--successful: reset all changes in the EditableTagItem
-        if (changedMetaTags != null) {
-          for (EditableMetaInfoItem tag : changedMetaTags) {
-            if (tag instanceof EditableTagItem) //only tags can be edited (not directories not the root)
-              ((EditableTagItem) tag).changesHaveBeenWritten();
-          }
-          changedMetaTags = null; //list is now no longer necessary
-        }
-        updateStatusProperty();
+  /**
+   * the changes made in the metaTags and the transformations (rotate, flip) are applied to the file on disk (see saveContentChanges()),
+   * if this has not already been done by a previous call of saveContentChanges().
+   * note: the changes of the ancestors will be applied in any case
+   * <p>
+   * A backup-file is put into the deleted folder before the changes are applied
+   *
+   * @return <ul>
+   * <li>SaveResult.SUCCESSFUL if successful</li>
+   * <li>SaveResult.NEEDS_2ND_TRY if an intermediate filename has been given and a second run is necessary</li>
+   * <li>SaveResult.ERROR if another error has occurred (e.g. write protect/access denied etc)</li>
+   * </ul>
+   */
+  @Override
+  public SaveResult saveChanges() {
+    boolean successful = saveContentChanges(); //nothing to do if already saved by MediaFileListSavingTask
 
-      } else { //not a supported file = error during opening
-        successful = false;
-      }
-    }  //if supported and changed
     //finally, perform all other changes derived from ancestors
     SaveResult result = super.saveChanges();
 
@@ -5,6 +5,7 @@ import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.collections.ObservableList;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 
 /**
  * MIT License
@@ -17,6 +18,7 @@ import java.nio.file.Path;
  *
  * @author Ingo
  * @since 2012-09-02
+ * @version 2026-10-17 constructor takes lastModified from folder scan
  * @version 2020-11-19 globalSettings is now global (static in Kissphoto)
  * @version 2014-06-05 java.io operations changed into java.nio
  * @version 2019-06-22 mediaCache corrections: getMediaContentException() added
@@ -26,6 +28,10 @@ public class OtherFile extends MediaFile {
     super(otherFile, parent);
   }
 
+  public OtherFile(Path otherFile, MediaFileList parent, FileTime lastModified) {
+    super(otherFile, parent, lastModified);
+  }
+
   @Override
   public long getContentApproxMemSize() {
     return 0;  //content of other file is never loaded, freeing from cache has no effect on memory consumption
@@ -5,6 +5,7 @@ import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.collections.ObservableList;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 
 /**
  * MIT License
@@ -15,14 +16,15 @@ import java.nio.file.Path;
  *
  * @author ikreuz
  * @since 2012-08-28
+ * @version 2026-10-17 constructor takes lastModified from folder scan
  * @version 2020-12-20 The current playerViewer decides now if a file is a movieFile and what to put into the cache
  * @version 2020-11-19 globalSettings is now global (static in Kissphoto)
  * @version 2014-06-05 java.io operations changed into java.nio
  */
 public class PlayableFile extends MediaFileTagged {
 
-  public PlayableFile(Path movieFile, MediaFileList parent) {
-    super(movieFile, parent);
+  public PlayableFile(Path movieFile, MediaFileList parent, FileTime lastModified) {
+    super(movieFile, parent, lastModified);
   }
 
   /*
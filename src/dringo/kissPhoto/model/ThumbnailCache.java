@@ -0,0 +1,394 @@
+package dringo.kissPhoto.model;
+
+import dringo.kissPhoto.KissPhoto;
+import mediautil.gen.Log;
+import mediautil.image.jpeg.LLJTran;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * <br>
+ * Persistent thumbnail cache in the settings directory (see GlobalSettings.getSettingsDirectory()), which survives restarts
+ * <ul>
+ * <li>thumbnails.dat: the thumbnails as jpg-bytes, appended one after the other</li>
+ * <li>thumbnails.idx: a hash table (open addressing) which is memory mapped, so that a lookup needs no file access for the index.
+ * Every slot holds the hash of the key, the offset and the length of the thumbnail in thumbnails.dat</li>
+ * <li>the key is path + size + last modified time of the file: if a file is changed its old thumbnail is not found any longer</li>
+ * <li>missing thumbnails are created by a single worker thread with lowest priority (see requestThumbnail()).
+ * For jpgs the thumbnail embedded in the Exif header is used, all other images are read subsampled and scaled down.
+ * Images that have been decoded anyway (e.g. for the viewer) are scaled down without reading the file again</li>
+ * <li>there is no eviction: if the index is filled up to 3/4 or thumbnails.dat exceeds its maximum size the cache is cleared and filled again</li>
+ * </ul>
+ * thumbnails.dat is read and written via RandomAccessFile: a FileChannel would be closed for all threads as soon as one thread
+ * is interrupted while using it (e.g. a cancelled thumbnail loading)
+ * <p>
+ * The maximum size of thumbnails.dat can be set in the global settings (ThumbnailCache_maxMB)
+ * If the files cannot be opened (e.g. another instance of kissPhoto is already using them) the cache is disabled: lookups return null
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public class ThumbnailCache {
+  public static final int THUMBNAIL_SIZE = 256; //max width and height of thumbnails that are created (embedded Exif thumbnails are stored as they are)
+
+  private static final String INDEX_FILENAME = "thumbnails.idx";
+  private static final String DATA_FILENAME = "thumbnails.dat";
+  private static final String MAX_MB = "ThumbnailCache_maxMB"; //id in global settings
+  private static final long MB = 1 << 20;
+  private static final long DEFAULT_MAX_DATA_SIZE = 256 * MB;
+
+  //index file layout
+  private static final int MAGIC = 0x6B505443;  //"kPTC"
+  private static final int VERSION = 1;
+  private static final int SLOTS = 1 << 18;      //power of 2, 6MB index
+  private static final int HEADER_SIZE = 16;     //magic, version, slots, used slots
+  private static final int SLOT_SIZE = 24;       //keyHash (long), offset (long), length (int), reserved (int)
+  private static final int USED_POS = 12;
+  private static final long EMPTY = 0;           //keyHash of an empty slot
+
+  private static ThumbnailCache instance = null;
+
+  private final long maxDataSize;
+  private FileChannel indexChannel = null;
+  private RandomAccessFile dataFile = null;    //not interruptible (see above)
+  private FileLock lock = null;
+  private MappedByteBuffer index = null;  //null if the cache is disabled
+  private int usedSlots = 0;
+
+  //create missing thumbnails in background
+  private final Set<Path> pending = ConcurrentHashMap.newKeySet(); //files waiting in the worker's queue
+  private final ThreadPoolExecutor worker = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+    runnable -> {
+      Thread th = new Thread(runnable, "kissPhoto thumbnail cache");
+      th.setDaemon(true); //cancel with end of kissPhoto (latest)
+      th.setPriority(Thread.MIN_PRIORITY);
+      return th;
+    });
+
+  /**
+   * @return the thumbnail cache of kissPhoto. It is opened with the first call
+   */
+  public static synchronized ThumbnailCache getInstance() {
+    if (instance == null) instance = new ThumbnailCache(KissPhoto.globalSettings.getSettingsDirectory());
+    return instance;
+  }
+
+  /**
+   * close the files of the thumbnail cache if it has been opened (at the end of kissPhoto)
+   */
+  public static synchronized void closeInstance() {
+    if (instance != null) {
+      instance.close();
+      instance = null;
+    }
+  }
+
+  /**
+   * open (or create) the cache files in the given directory
+   *
+   * @param directory where the cache files are stored
+   */
+  private ThumbnailCache(Path directory) {
+    long newMaxDataSize;
+    try {
+      newMaxDataSize = Long.parseLong(KissPhoto.globalSettings.getProperty(MAX_MB)) * MB;
+      if (newMaxDataSize <= 0) newMaxDataSize = DEFAULT_MAX_DATA_SIZE;
+    } catch (Exception e) {
+      newMaxDataSize = DEFAULT_MAX_DATA_SIZE; //no or invalid setting
+    }
+    maxDataSize = newMaxDataSize;
+    worker.allowCoreThreadTimeOut(true);
+
+    try {
+      indexChannel = FileChannel.open(directory.resolve(INDEX_FILENAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      lock = indexChannel.tryLock();
+      if (lock == null) throw new IOException("thumbnail cache is used by another instance of kissPhoto");
+      dataFile = new RandomAccessFile(directory.resolve(DATA_FILENAME).toFile(), "rw");
+
+      index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) SLOTS * SLOT_SIZE);
+      if (index.getInt(0) == MAGIC && index.getInt(4) == VERSION && index.getInt(8) == SLOTS) {
+        usedSlots = index.getInt(USED_POS);
+      } else {
+        clear(); //new file or another format
+      }
+    } catch (Exception e) {
+      if (Log.debugLevel >= Log.LEVEL_DEBUG) System.out.println("ThumbnailCache: disabled: " + e.getMessage());
+      close();
+    }
+  }
+
+  /**
+   * @param file image file
+   * @return the thumbnail of the file as jpg-bytes or null if it is not in the cache (or the cache is disabled)
+   */
+  public byte[] lookup(Path file) {
+    if (index == null) return null;
+    try {
+      return lookup(keyHash(file));
+    } catch (IOException e) {
+      return null; //file not accessible
+    }
+  }
+
+  /**
+   * put a thumbnail into the cache. If the cache is full it is cleared before.
+   *
+   * @param file      image file which the thumbnail belongs to
+   * @param thumbnail jpg-bytes of the thumbnail
+   */
+  public void store(Path file, byte[] thumbnail) {
+    if (index == null || thumbnail == null || thumbnail.length == 0) return;
+    try {
+      store(keyHash(file), thumbnail);
+    } catch (IOException e) {
+      //nothing to do: the thumbnail will be created again next time
+    }
+  }
+
+  /**
+   * if the thumbnail of the file is not in the cache, it is created in background by a worker thread with low priority
+   *
+   * @param file image file
+   */
+  public void requestThumbnail(Path file) {
+    if (index == null || !pending.add(file)) return; //disabled or already requested
+
+    worker.execute(() -> {
+      try {
+        if (lookup(file) == null) store(file, createThumbnail(file));
+      } catch (Exception | OutOfMemoryError e) {
+        //nothing to do: no thumbnail for this file
+      } finally {
+        pending.remove(file);
+      }
+    });
+  }
+
+  /**
+   * store the thumbnail of an image that has already been decoded (e.g. for showing it), so that the file needn't be read again
+   * The image is scaled and encoded in background by the worker thread with low priority
+   *
+   * @param file  image file which the image belongs to
+   * @param image the decoded image, preferably already subsampled to about THUMBNAIL_SIZE
+   */
+  public void requestThumbnail(Path file, BufferedImage image) {
+    if (index == null || !pending.add(file)) return; //disabled or already requested
+
+    worker.execute(() -> {
+      try {
+        if (lookup(file) == null) store(file, scaleToThumbnail(image));
+      } catch (Exception | OutOfMemoryError e) {
+        //nothing to do: no thumbnail for this file
+      } finally {
+        pending.remove(file);
+      }
+    });
+  }
+
+  /**
+   * @param file jpg file
+   * @return the thumbnail embedded in the Exif header of the file or null if there is none (or file is no jpg)
+   */
+  public static byte[] readExifThumbnail(Path file) {
+    String filename = file.getFileName().toString().toLowerCase();
+    if (!(filename.endsWith(".jpg") || filename.endsWith(".jpeg"))) return null;
+
+    LLJTran llj = new LLJTran(file.toFile());
+    try {
+      llj.read(LLJTran.READ_HEADER, true);
+      try (InputStream thumbnailStream = llj.getThumbnailAsStream()) {
+        return (thumbnailStream != null) ? thumbnailStream.readAllBytes() : null;
+      }
+    } catch (Exception e) {
+      return null;
+    } finally {
+      llj.freeMemory(); //also closes the file
+    }
+  }
+
+  /**
+   * create the thumbnail of an image file
+   * <ul>
+   * <li>jpg: use the embedded Exif thumbnail if available</li>
+   * <li>otherwise: read the image subsampled (only about every n-th pixel is decoded) and scale it to THUMBNAIL_SIZE</li>
+   * </ul>
+   *
+   * @param file image file
+   * @return jpg-bytes of the thumbnail or null if not possible
+   * @throws IOException if the file cannot be read
+   */
+  public static byte[] createThumbnail(Path file) throws IOException {
+    byte[] thumbnail = readExifThumbnail(file);
+    if (thumbnail != null) return thumbnail;
+
+    try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(file.toFile())) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+      if (!readers.hasNext()) return null; //format not supported by javax.imageio
+
+      ImageReader reader = readers.next();
+      BufferedImage subsampled;
+      try {
+        reader.setInput(imageInputStream, true, true);
+        int subsampling = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / THUMBNAIL_SIZE);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        subsampled = reader.read(0, param);
+      } finally {
+        reader.dispose();
+      }
+      return scaleToThumbnail(subsampled);
+    }
+  }
+
+  /**
+   * scale an image down to THUMBNAIL_SIZE (smaller images are not enlarged) and encode it as jpg
+   *
+   * @param image the (subsampled) image
+   * @return jpg-bytes of the thumbnail
+   * @throws IOException if encoding is not possible
+   */
+  private static byte[] scaleToThumbnail(BufferedImage image) throws IOException {
+    double scale = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(image.getWidth(), image.getHeight()));
+    int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); //jpg has no alpha channel
+    Graphics2D graphics = scaled.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    graphics.drawImage(image, 0, 0, width, height, null);
+    graphics.dispose();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(scaled, "jpg", out);
+    return out.toByteArray();
+  }
+
+  //------------------------------- index ------------------------------------
+
+  /**
+   * FNV-1a hash (64 bit) of the key path|size|lastModified
+   *
+   * @param file image file
+   * @return hash of the key, never EMPTY
+   * @throws IOException if the file's attributes cannot be read
+   */
+  private static long keyHash(Path file) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    String key = file.toAbsolutePath().normalize() + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis();
+
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return (hash == EMPTY) ? 1 : hash;
+  }
+
+  private static int slotPosition(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private synchronized byte[] lookup(long keyHash) throws IOException {
+    if (index == null) return null;
+
+    int slot = (int) keyHash & (SLOTS - 1);
+    long slotHash;
+    while ((slotHash = index.getLong(slotPosition(slot))) != EMPTY) {
+      if (slotHash == keyHash) {
+        int pos = slotPosition(slot);
+        long offset = index.getLong(pos + 8);
+        int length = index.getInt(pos + 16);
+        if (offset + length > dataFile.length()) return null; //data has been lost (e.g. crash before it was written)
+
+        byte[] thumbnail = new byte[length];
+        dataFile.seek(offset);
+        dataFile.readFully(thumbnail);
+        return thumbnail;
+      }
+      slot = (slot + 1) & (SLOTS - 1); //linear probing
+    }
+    return null;
+  }
+
+  private synchronized void store(long keyHash, byte[] thumbnail) throws IOException {
+    if (index == null) return;
+    if (usedSlots >= SLOTS / 4 * 3 || dataFile.length() + thumbnail.length > maxDataSize) clear();
+
+    //append data first, then write the slot: an index entry never points to data that has not been written
+    long offset = dataFile.length();
+    dataFile.seek(offset);
+    dataFile.write(thumbnail);
+
+    int slot = (int) keyHash & (SLOTS - 1);
+    long slotHash;
+    while ((slotHash = index.getLong(slotPosition(slot))) != EMPTY && slotHash != keyHash) {
+      slot = (slot + 1) & (SLOTS - 1); //linear probing
+    }
+    int pos = slotPosition(slot);
+    index.putLong(pos + 8, offset);
+    index.putInt(pos + 16, thumbnail.length);
+    if (slotHash == EMPTY) {
+      index.putLong(pos, keyHash);
+      usedSlots++;
+      index.putInt(USED_POS, usedSlots);
+    }
+  }
+
+  /**
+   * remove all thumbnails and initialize the index
+   */
+  private synchronized void clear() throws IOException {
+    dataFile.setLength(0);
+
+    byte[] zeros = new byte[64 * 1024];
+    index.position(0);
+    while (index.hasRemaining()) index.put(zeros, 0, Math.min(zeros.length, index.remaining()));
+    index.putInt(0, MAGIC);
+    index.putInt(4, VERSION);
+    index.putInt(8, SLOTS);
+    usedSlots = 0;
+    index.putInt(USED_POS, usedSlots);
+  }
+
+  /**
+   * write everything to disk and close the files. From now on the cache is disabled
+   */
+  private synchronized void close() {
+    worker.shutdownNow();
+    try {
+      if (index != null) index.force();
+      if (dataFile != null) dataFile.close();
+      if (lock != null) lock.release();
+      if (indexChannel != null) indexChannel.close();
+    } catch (IOException e) {
+      //nothing to do
+    }
+    index = null;
+  }
+}
@@ -8,6 +8,7 @@ import dringo.kissPhoto.helper.ObservableStringList;
 import dringo.kissPhoto.helper.PathHelpers;
 import dringo.kissPhoto.model.MediaFile;
 import dringo.kissPhoto.model.MediaFileList;
+import dringo.kissPhoto.model.MediaFileListLoadingTask;
 import dringo.kissPhoto.model.MediaFileListSavingTask;
 import dringo.kissPhoto.view.dialogs.*;
 import dringo.kissPhoto.view.fileTableHelpers.FileHistory;
@@ -39,8 +40,11 @@ import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
+import java.util.Map;
 
 import static dringo.kissPhoto.KissPhoto.language;
 
@@ -55,6 +59,10 @@ import static dringo.kissPhoto.KissPhoto.language;
  *
  * @author Ingo
 
+ * @version 2026-10-17 a snapshot of the folder is compared with the list if the changes are unknown (lost events, after saving)
+ * @version 2026-10-17 external changes of the folder are applied to the list again (batched by FileChangeWatcher)
+ * @version 2026-10-17 openFolder: the list is sorted again and the file count updated when the folder has been loaded completely in background
+ * @version 2026-10-17 openFolder: selecting the file is repeated when the folder has been loaded completely in background
  * @version 2024-10-06 support auto-open previous/next directory (depth first) if moving over borders (first/last) of list, viewport search more robust
  * @version 2023-01 29 support file deletion and moving while in edit mode (see FileTableTextFieldCell)
  * @version 2023-01-05 ctrl-del to delete while inplace editing  and undelete last implemented. Moving to next/previous file cleaned up and moved to FileTableView from ContentView
@@ -244,7 +252,7 @@ public class FileTableView extends TableView<MediaFile> implements FileChangeWat
     fileDateColumn.setEditable(true);
     fileDateColumn.setCellFactory(fileTableTextFieldCellFactory);
     fileDateColumn.setOnEditCommit(cellEditCommitEventHandler);
-    fileDateColumn.setCellValueFactory(mediaFile -> mediaFile.getValue().modifiedDate);
+    fileDateColumn.setCellValueFactory(mediaFile -> mediaFile.getValue().modifiedDateProperty());
     getColumns().add(fileDateColumn);
 
     //Meta-Info Column
@@ -635,7 +643,8 @@ public class FileTableView extends TableView<MediaFile> implements FileChangeWat
     boolean found = false;
     if (!mediaFileList.getFileList().isEmpty() && fileName != null) {
       File f = new File(fileName);      //file class used for parsing the name
-      int i = mediaFileList.searchPhysicalFilename(f.getName());
+      MediaFile mediaFile = mediaFileList.searchPhysicalFilename(f.getName());
+      int i = (mediaFile != null) ? getItems().indexOf(mediaFile) : -1;
       found = (i >= 0);
       if (found) {
         this.getSelectionModel().clearAndSelect(i);
@@ -735,17 +744,43 @@ public class FileTableView extends TableView<MediaFile> implements FileChangeWat
     }
   }
 
-  public void onFolderChanged(String filename, WatchEvent.Kind kind) {
-    //--> ik: folder update was signalled to slowly: don't update list automatically
-    /*mediaFileList.onFolderChanged(filename, kind);
-    if modified file was currently selected then update mediaContentView
-    if (getSelectionModel().getSelectedItem() == mediaFileList.getMediaFile(filename)) {
-      showMedia((MediaFile) getFocusModel().getFocusedItem());
+  /**
+   * the FileChangeWatcher has signalled a batch of external changes to the folder: update the list
+   *
+   * @param changes filename and kind of change
+   */
+  public void onFolderChanged(Map<String, WatchEvent.Kind<?>> changes) {
+    MediaFile selectedFile = getSelectionModel().getSelectedItem();
+    mediaFileList.onFolderChanged(changes);
+
+    //if the modified file is currently selected then update mediaContentView
+    if (selectedFile != null && getSelectionModel().getSelectedItem() == selectedFile
+      && changes.get(selectedFile.getFileOnDiskName()) == StandardWatchEventKinds.ENTRY_MODIFY) {
+      showMedia(selectedFile, null);
     }
-    */
     statusBar.showError(language.getString("underlying.directory.has.changed.new.file.s.have.been.added.to.the.end.of.the.list"));
   }
 
+  /**
+   * the FileChangeWatcher could not tell the changes (lost events or paused while saving): compare the list with the snapshot
+   *
+   * @param snapshot filename and attributes of the files in the folder
+   */
+  public void onFolderSnapshot(Map<String, BasicFileAttributes> snapshot) {
+    MediaFile selectedFile = getSelectionModel().getSelectedItem();
+    long modifiedMillis = (selectedFile != null) ? selectedFile.getModifiedMillis() : 0;
+    long fileSize = (selectedFile != null) ? selectedFile.getFileSize() : 0;
+    boolean filesAddedOrRemoved = mediaFileList.onFolderSnapshot(snapshot);
+
+    //if the selected file has been modified then update mediaContentView
+    if (selectedFile != null && getSelectionModel().getSelectedItem() == selectedFile
+      && (selectedFile.getModifiedMillis() != modifiedMillis || selectedFile.getFileSize() != fileSize)) {
+      showMedia(selectedFile, null);
+    }
+    if (filesAddedOrRemoved)
+      statusBar.showError(language.getString("underlying.directory.has.changed.new.file.s.have.been.added.to.the.end.of.the.list"));
+  }
+
   public void stopWatcherThread() {
     fileChangeWatcher.stopWatcherThread();
   }
@@ -823,9 +858,20 @@ public class FileTableView extends TableView<MediaFile> implements FileChangeWat
           numberingDigits = 0;   //zero is [auto]
 
           setItems(mediaFileList.getFileList());
+          Path fileToSelect = null;
           if (newFileOrFolder != null) {
             selectRowByPath(newFileOrFolder);
             fileHistory.putOpenedFileToHistory(newFileOrFolder);
+
+            //the file to be selected might not be in the first files read: try again, when the rest of the folder has been loaded in background
+            if (!Files.isDirectory(newFileOrFolder) && mediaFileList.searchPhysicalFilename(newFileOrFolder.getFileName().toString()) == null)
+              fileToSelect = newFileOrFolder;
+          }
+
+          final MediaFileListLoadingTask loadingTask = mediaFileList.getLoadingTask();
+          if (loadingTask != null) {
+            final Path selectWhenLoaded = fileToSelect;
+            loadingTask.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, t -> onFolderLoadedInBackground(reopened, selectWhenLoaded));
           }
 
         }
@@ -860,6 +906,29 @@ public class FileTableView extends TableView<MediaFile> implements FileChangeWat
     enableSelectionListener = true;
   }
 
+  /**
+   * the rest of the folder has been loaded in background (see MediaFileList.openFolder()).
+   * The table does not sort rows that are added to its items: sort the complete list again,
+   * and show the number of files of the complete folder
+   *
+   * @param reopened     true if the folder has been reopened (then the "reopened" message is kept)
+   * @param fileToSelect the file to be selected that has not been in the first files read, null to keep the current selection
+   */
+  private void onFolderLoadedInBackground(boolean reopened, Path fileToSelect) {
+    sort();
+    if (fileToSelect != null) {
+      selectRowByPath(fileToSelect);
+    } else {
+      int index = getSelectionModel().getSelectedIndex();
+      if (index >= 0) scrollViewportToIndex(index, Alignment.CENTER);
+    }
+
+    int filesNumber = mediaFileList.getFileList().size();
+    statusBar.showFilesNumber(filesNumber);
+    if (!reopened)
+      statusBar.showMessage(MessageFormat.format(language.getString("0.files.opened"), Integer.toString(filesNumber)));
+  }
+
   /**
    * open next folder on the same level
    * keep it simple: if there is none, nothing happens, don't leave the parent folder
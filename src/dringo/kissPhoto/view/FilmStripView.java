@@ -0,0 +1,183 @@
+package dringo.kissPhoto.view;
+
+import dringo.kissPhoto.KissPhoto;
+import dringo.kissPhoto.model.MediaFile;
+import dringo.kissPhoto.model.ThumbnailCache;
+import dringo.kissPhoto.view.filmStripHelpers.ThumbnailCell;
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * <br>
+ * A film strip with thumbnails of all files of the FileTableView (same MediaFileList.fileList, i.e. same order)
+ * <ul>
+ * <li>it is a ListView, so cells are virtualized: only the visible cells exist and they are recycled while scrolling (see ThumbnailCell)</li>
+ * <li>thumbnails are loaded asynchronously by a small pool of worker threads from the persistent ThumbnailCache (or created and stored there)</li>
+ * <li>a cell that gets another mediaFile cancels the loading of its previous one, so that only what is visible is loaded while scrolling fast</li>
+ * <li>the decoded thumbnails are kept in a small LRU (MAX_THUMBNAILS_IN_MEMORY), so memory is bounded</li>
+ * <li>the selection is synchronized with the FileTableView in both directions</li>
+ * </ul>
+ * The film strip can be shown/hidden via the View menu. The visibility is stored in the global settings
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public class FilmStripView extends ListView<MediaFile> {
+  public static final double THUMBNAIL_HEIGHT = 96; //height of the thumbnails in the film strip
+  private static final double STRIP_HEIGHT = THUMBNAIL_HEIGHT + 40; //+ filename + scroll bar
+  private static final int MAX_THUMBNAILS_IN_MEMORY = 300;
+  private static final String FILM_STRIP_VISIBLE = "FilmStripView_Visible"; //id in global settings
+
+  private final FileTableView fileTableView;
+  private boolean isSyncingSelection = false; //prevents endless loops while synchronizing the selection with fileTableView
+
+  //decoded thumbnails: access-order, eldest removed if too many. Accessed in GUI thread only
+  private final Map<Path, Image> thumbnails = new LinkedHashMap<>(MAX_THUMBNAILS_IN_MEMORY, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, Image> eldest) {
+      return size() > MAX_THUMBNAILS_IN_MEMORY;
+    }
+  };
+
+  //bounded pool for loading the thumbnails
+  private static final ThreadPoolExecutor loader = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+    runnable -> {
+      Thread th = new Thread(runnable, "kissPhoto film strip thumbnail loader");
+      th.setDaemon(true); //cancel with end of kissPhoto (latest)
+      return th;
+    });
+
+  static {
+    loader.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @param fileTableView the film strip shows the same files and synchronizes its selection with this fileTableView
+   */
+  public FilmStripView(FileTableView fileTableView) {
+    this.fileTableView = fileTableView;
+
+    setOrientation(Orientation.HORIZONTAL);
+    setPrefHeight(STRIP_HEIGHT);
+    setMinHeight(STRIP_HEIGHT);
+    setMaxHeight(STRIP_HEIGHT);
+    setFocusTraversable(false); //keyboard navigation stays in fileTableView
+    setCellFactory(listView -> new ThumbnailCell(this));
+    setItems(fileTableView.getMediaFileList().getFileList());
+
+    //hidden film strip takes no space
+    managedProperty().bind(visibleProperty());
+
+    installSelectionSync();
+  }
+
+  private void installSelectionSync() {
+    //fileTableView --> film strip
+    fileTableView.getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) -> {
+      if (isSyncingSelection || !isVisible()) return;
+      isSyncingSelection = true;
+      int index = newValue.intValue();
+      if (index >= 0) {
+        getSelectionModel().clearAndSelect(index);
+        scrollTo(Math.max(0, index - 2)); //keep some thumbnails before the selection visible
+      } else {
+        getSelectionModel().clearSelection();
+      }
+      isSyncingSelection = false;
+    });
+
+    //film strip --> fileTableView
+    getSelectionModel().selectedIndexProperty().addListener((observable, oldValue, newValue) -> {
+      if (isSyncingSelection || newValue.intValue() < 0) return;
+      isSyncingSelection = true;
+      fileTableView.getSelectionModel().clearAndSelect(newValue.intValue());
+      fileTableView.scrollViewportToIndex(newValue.intValue(), FileTableView.Alignment.CENTER);
+      isSyncingSelection = false;
+    });
+
+    //synchronize when showing again
+    visibleProperty().addListener((observable, oldValue, newValue) -> {
+      if (newValue) {
+        int index = fileTableView.getSelectionModel().getSelectedIndex();
+        if (index >= 0) {
+          isSyncingSelection = true;
+          getSelectionModel().clearAndSelect(index);
+          scrollTo(Math.max(0, index - 2));
+          isSyncingSelection = false;
+        }
+      }
+    });
+  }
+
+  /**
+   * get the thumbnail of a file: if it is already in memory the consumer is called immediately,
+   * otherwise it is loaded in background and the consumer is called in the GUI thread when it is available
+   * (the consumer is not called if no thumbnail can be created)
+   *
+   * @param file     image file
+   * @param consumer receives the thumbnail in the GUI thread
+   * @return the Future of the background loading (to be able to cancel it) or null if the thumbnail was in memory
+   */
+  public Future<?> requestThumbnail(Path file, Consumer<Image> consumer) {
+    Image thumbnail = thumbnails.get(file);
+    if (thumbnail != null) {
+      consumer.accept(thumbnail);
+      return null;
+    }
+
+    return loader.submit(() -> {
+      try {
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance();
+        byte[] thumbnailBytes = thumbnailCache.lookup(file);
+        if (thumbnailBytes == null) {
+          thumbnailBytes = ThumbnailCache.createThumbnail(file);
+          thumbnailCache.store(file, thumbnailBytes);
+        }
+        if (thumbnailBytes != null && !Thread.currentThread().isInterrupted()) {
+          Image loaded = new Image(new ByteArrayInputStream(thumbnailBytes), 0, THUMBNAIL_HEIGHT, true, true);
+          if (!loaded.isError())
+            Platform.runLater(() -> {
+              thumbnails.put(file, loaded);
+              consumer.accept(loaded);
+            });
+        }
+      } catch (Exception | OutOfMemoryError e) {
+        //nothing to do: the cell remains without thumbnail
+      }
+    });
+  }
+
+  /**
+   * Store visibility (true/false) in global settings
+   */
+  public void storeVisibilityInGlobalSettings() {
+    KissPhoto.globalSettings.setProperty(FILM_STRIP_VISIBLE, Boolean.toString(isVisible()));
+  }
+
+  /**
+   * read visibility from settings file. Default: not visible
+   */
+  public void restoreVisibilityFromGlobalSettings() {
+    try {
+      setVisible(Boolean.parseBoolean(KissPhoto.globalSettings.getProperty(FILM_STRIP_VISIBLE)));
+    } catch (Exception e) {
+      setVisible(false);
+    }
+  }
+}
@@ -26,6 +26,7 @@ import javafx.stage.WindowEvent;
  *
  * @author Ingo
  * @since 2012-09-09
+ * @version 2026-10-17 show/hide film strip (ctrl-T)
  * @version 2023-10-14 metaInfoItem binding with MetaInfoView.visibleProperty improved (only local calls now)
  * @version 2023-01-05 undelete last file supported. Gray-out of undelete menuItems now use Bindings
  * @version 2022-09-04 clean up primaryStage parameter
@@ -50,6 +51,7 @@ public class MainMenuBar extends MenuBar {
   private final FileTableView fileTableView; //link to fileTableView to call methods via menu
   private final MediaContentView mediaContentView; //link to mediaContentView for full screen etc
   private final MetaInfoView metaInfoView; //link to metaInfoView for showing/hiding it via view menu
+  private final FilmStripView filmStripView; //link to filmStripView for showing/hiding it via view menu
 
   private final Menu fileMenu = new Menu(KissPhoto.language.getString("fileMenu"));
   private final Menu editMenu = new Menu(KissPhoto.language.getString("editMenu"));
@@ -74,13 +76,15 @@ public class MainMenuBar extends MenuBar {
    * @param fileTableView  link for calling of most of the methods, i.e. Filetable.open etc.
    * @param mediaContentView link to mediaContentView for player menu items
    * @param metaInfoView link to Exif/Metadata View for navigation/show hide etc
+   * @param filmStripView link to film strip for show/hide
    * @param primaryStage link to main window because getScene().getWindow() is null during startup, because Menu is added after creation only
    */
-  public MainMenuBar(FileTableView fileTableView, MediaContentView mediaContentView, MetaInfoView metaInfoView, Stage primaryStage) {
+  public MainMenuBar(FileTableView fileTableView, MediaContentView mediaContentView, MetaInfoView metaInfoView, FilmStripView filmStripView, Stage primaryStage) {
     super();
     this.fileTableView = fileTableView;
     this.mediaContentView = mediaContentView;
     this.metaInfoView = metaInfoView;
+    this.filmStripView = filmStripView;
 
     createFileMenu();
     createEditMenu(primaryStage);
@@ -364,6 +368,12 @@ public class MainMenuBar extends MenuBar {
     });
     viewMenu.getItems().add(showGPSLocationItem);
 
+    //----------------- FilmStripView's View
+    final CheckMenuItem showFilmStripItem = new CheckMenuItem(KissPhoto.language.getString("show.film.strip"));
+    showFilmStripItem.setAccelerator(new KeyCodeCombination(KeyCode.T, KeyCombination.CONTROL_DOWN));
+    showFilmStripItem.selectedProperty().bindBidirectional(filmStripView.visibleProperty());
+    viewMenu.getItems().add(showFilmStripItem);
+
 
     //----------------- MediaView's View
     viewMenu.getItems().add(new SeparatorMenuItem());
@@ -39,6 +39,7 @@ import java.text.MessageFormat;
  * <p/>
  *
  * @author Dringo
+ * @version 2026-10-17 preloadMediaContent passes the decoding priority to the viewer
  * @version 2023-10-03 Keep it simple: Description usage was too complicated: "Show Description" toggles now between description, show all and off.
  * @version 2023-01-05 del/ctrl-del, Shift-Ctrl-del and ctrl-z (=delete/undelete) support added while focus on MediaContentView . Moving to next/previous file cleaned up and moved to FileTableView
  * @version 2022-09-08 Fixed Full-Screen with TV-sets, parameter 'Stage' is not necessary (see getStage())
@@ -365,9 +366,9 @@ public class MediaContentView extends StackPane {
    * try to preload the media content / put it into the cache
    * by asking the appropriate viewer to get an object that will help to show the mediaFile quickly
    */
-  public void preloadMediaContent(MediaFile mediaFile){
-    if (!photoViewer.preloadMediaContent(mediaFile))  //first try the photoViewer
-      playerViewer.preloadMediaContent(mediaFile);    //then try the active playerViewer
+  public void preloadMediaContent(MediaFile mediaFile, ImageDecodeScheduler.Priority priority){
+    if (!photoViewer.preloadMediaContent(mediaFile, priority))  //first try the photoViewer
+      playerViewer.preloadMediaContent(mediaFile, priority);    //then try the active playerViewer
     //otherViewer has no Cache support
   }
   /**
@@ -0,0 +1,75 @@
+package dringo.kissPhoto.view.filmStripHelpers;
+
+import dringo.kissPhoto.model.ImageFile;
+import dringo.kissPhoto.model.MediaFile;
+import dringo.kissPhoto.view.FilmStripView;
+import javafx.beans.binding.Bindings;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.ImageView;
+
+import java.util.concurrent.Future;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * <br>
+ * A cell of the FilmStripView: shows the thumbnail of an image and the filename below it.
+ * The cell is recycled by the ListView while scrolling: if it gets another mediaFile the loading of the previous thumbnail is cancelled
+ * (without interrupting the loading thread, which might be using the ThumbnailCache). The filename follows renaming in the table.
+ * Files that are no images show only their filename
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+public class ThumbnailCell extends ListCell<MediaFile> {
+  private final FilmStripView filmStripView;
+  private final ImageView imageView = new ImageView();
+  private Future<?> loading = null; //background loading of the current item's thumbnail, null if none
+  private MediaFile shownMediaFile = null; //the mediaFile whose thumbnail is shown or loading
+
+  /**
+   * @param filmStripView the view which loads the thumbnails
+   */
+  public ThumbnailCell(FilmStripView filmStripView) {
+    this.filmStripView = filmStripView;
+    imageView.setFitHeight(FilmStripView.THUMBNAIL_HEIGHT);
+    imageView.setFitWidth(FilmStripView.THUMBNAIL_HEIGHT * 4 / 3);
+    imageView.setPreserveRatio(true);
+    setContentDisplay(ContentDisplay.TOP);
+    setPrefWidth(FilmStripView.THUMBNAIL_HEIGHT * 4 / 3 + 8);
+    setMaxWidth(getPrefWidth());
+  }
+
+  @Override
+  protected void updateItem(MediaFile mediaFile, boolean empty) {
+    super.updateItem(mediaFile, empty);
+    if (empty) mediaFile = null;
+    if (mediaFile == shownMediaFile) return; //called again for the same item: keep thumbnail and loading
+
+    if (loading != null) {
+      loading.cancel(false); //the cell is reused for another mediaFile
+      loading = null;
+    }
+    imageView.setImage(null);
+    textProperty().unbind();
+    shownMediaFile = mediaFile;
+
+    if (mediaFile == null) {
+      setText(null);
+      setGraphic(null);
+    } else {
+      textProperty().bind(Bindings.createStringBinding(mediaFile::getResultingFilename,
+        mediaFile.prefix, mediaFile.counter, mediaFile.separator, mediaFile.description, mediaFile.extension));
+      setGraphic(imageView);
+      if (mediaFile instanceof ImageFile) {
+        final MediaFile requested = mediaFile;
+        loading = filmStripView.requestThumbnail(mediaFile.getFileOnDisk(), thumbnail -> {
+          if (getItem() == requested) imageView.setImage(thumbnail); //the cell might show another mediaFile in the meantime
+        });
+      }
+    }
+  }
+}
@@ -4,8 +4,7 @@ import dringo.kissPhoto.model.MediaFile;
 import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
 
-import java.text.ParseException;
-import java.util.Date;
+import java.time.format.DateTimeParseException;
 
 import static dringo.kissPhoto.KissPhoto.language;
 
@@ -18,6 +17,7 @@ import static dringo.kissPhoto.KissPhoto.language;
  * A tooltip is shown with explanation which characters are allowed if illegal characters are tried to enter
  *
  * @author Ingo
+ * @version 2026-10-17 validation uses thread safe MediaFile.parseDate/formatDate
  * @version 2014-05-02 I18Support
  * @since 2012-10-06
  */
@@ -193,7 +193,7 @@ public class DateTimeTextField extends RestrictedTextField {
    * At the end of editing FileTableTextFieldCell calls this method to give the RestrictedTextField-Implementation a chance
    * to make the entered value valid.
    * Here a valid date/time String is produced out of the input:
-   * SimpleDateFormat is used to parse() the string and produce the string again using format()
+   * MediaFile.parseDate() is used to parse the string and MediaFile.formatDate() to produce the string again
    *
    * @param text        to be validated
    * @param defaultText return this text if validation and repair fail
@@ -212,9 +212,8 @@ public class DateTimeTextField extends RestrictedTextField {
       text = text.substring(0, DATE_LENGTH - 1); //-1 --> Zero Based
 
     try {
-      Date date = MediaFile.dateFormatter.parse(text);
-      validated = MediaFile.dateFormatter.format(date);
-    } catch (ParseException e) {
+      validated = MediaFile.formatDate(MediaFile.parseDate(text));
+    } catch (DateTimeParseException e) {
       validated = defaultText; //it was not possible to interpret it as date/time
     }
     if (validated.isEmpty()) //an empty text will not cause ParseException but is still not a valid date
@@ -0,0 +1,342 @@
+package dringo.kissPhoto.view.mediaViewers;
+
+import javafx.concurrent.Task;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import dringo.kissPhoto.model.ThumbnailCache;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MIT License
+ * Copyright (c)2026 kissPhoto
+ * <p>
+ * kissPhoto for managing and viewing your photos, but keep it simple-stupid ;-)<br><br>
+ * <br>
+ * All images are decoded by this scheduler instead of letting JavaFX start a background loading for every new Image(url, true)
+ * <ul>
+ * <li>a fixed number of worker threads (one less than the number of cores, at least one) decodes the images</li>
+ * <li>waiting decodes are ordered by their priority: the current image first, then the next, then the previous, then all others (speculative preloads).
+ * Within the same priority the order of the requests is kept</li>
+ * <li>the priority of a waiting decode can be raised, e.g. if a preloaded image becomes the current one</li>
+ * <li>cancelling removes a waiting decode from the queue and stops a running decode at the next read from the file</li>
+ * <li>a decode can be limited to a maximum size (e.g. the screen resolution): larger images are downsampled while decoding
+ * which saves a lot of memory (a 50MP photo needs 200MB in full resolution but only 16MB in 4k resolution)</li>
+ * <li>a thumbnail (from the persistent ThumbnailCache or embedded in the Exif header of jpg files) is decoded first and published as
+ * intermediate value of the task, so that a viewer can show something immediately while the full image is still decoding</li>
+ * </ul>
+ * The DecodeTask is what PhotoViewer hands to ImageFile to be put into the cache.
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ * @version 2026-10-17 thumbnails from the persistent ThumbnailCache
+ * @version 2026-10-17 embedded Exif thumbnail is published before the image is decoded
+ * @version 2026-10-17 optional downsampling to a maximum size while decoding
+ */
+public class ImageDecodeScheduler {
+  /**
+   * the lanes of the scheduler in the order of their importance
+   */
+  public enum Priority {
+    CURRENT, NEXT, PREVIOUS, SPECULATIVE
+  }
+
+  private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1); //leave one core for the GUI thread
+  private static final AtomicLong requestCounter = new AtomicLong(); //keeps the order of requests with the same priority
+
+  private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+    new PriorityBlockingQueue<>(16, Comparator.comparing((Runnable r) -> ((DecodeTask) r).priority).thenComparingLong(r -> ((DecodeTask) r).requestNumber)),
+    runnable -> {
+      Thread th = new Thread(runnable, "kissPhoto image decoder");
+      th.setDaemon(true); //cancel with end of kissPhoto (latest)
+      return th;
+    });
+
+  static {
+    executor.allowCoreThreadTimeOut(true); //no idle threads while only browsing the file table
+  }
+
+  /**
+   * start a decode task
+   * Install all listeners (e.g. setOnSucceeded) before calling this method
+   *
+   * @param task     the task to be scheduled
+   * @param priority the lane in which the task waits for a worker
+   */
+  public static void schedule(DecodeTask task, Priority priority) {
+    task.priority = priority;
+    task.requestNumber = requestCounter.getAndIncrement();
+    executor.execute(task);
+  }
+
+  /**
+   * raise the priority of a waiting decode task. If the content is no DecodeTask or the task is already running or finished or has a higher priority
+   * nothing happens
+   *
+   * @param content  the content cached by ImageFile
+   * @param priority the new priority
+   */
+  public static synchronized void prioritize(Object content, Priority priority) {
+    if (content instanceof DecodeTask task && priority.compareTo(task.priority) < 0) {
+      if (executor.getQueue().remove(task)) {  //the queue's order must not change while the task is in the queue
+        task.priority = priority;
+        executor.execute(task);
+      }
+    }
+  }
+
+  /**
+   * cancel a decode task: a waiting task is removed from the queue, a running task stops at the next read from the file.
+   * The thread is not interrupted: it might just be reading from the ThumbnailCache
+   *
+   * @param task the task to be cancelled
+   */
+  public static void cancel(DecodeTask task) {
+    task.cancel(false);
+    executor.remove(task);
+  }
+
+  /**
+   * A Task decoding an image file into a JavaFX image.
+   * As Task's state properties may only be read in the GUI thread, the result is also available by thread safe getters (getImage(), getFailure())
+   * so that the cache can be maintained from any thread
+   * If a maximum size is given, the original size is read from the image header first (javax.imageio reads only the header for this)
+   * and the image is downsampled while decoding if it is larger. If the original size cannot be determined the image is decoded in full resolution.
+   */
+  public static class DecodeTask extends Task<Image> {
+    private final Path file;
+    private final int maxSize;  //max width and height of the decoded image, 0=full resolution
+    private volatile Priority priority = Priority.SPECULATIVE;
+    private volatile long requestNumber;
+
+    private volatile Image image = null;        //the result, null until decoding has succeeded
+    private volatile Image thumbnail = null;    //from ThumbnailCache or embedded Exif thumbnail, null if not (yet) read or not available
+    private boolean thumbnailMissing = false;   //true if neither ThumbnailCache nor Exif header had a thumbnail: it is made from the decoded image
+    private volatile Throwable failure = null;  //the error or exception that occurred while decoding, null if none
+    private volatile int originalWidth = 0;     //size of the image file, 0 if unknown
+    private volatile int originalHeight = 0;
+
+    /**
+     * decode in full resolution
+     *
+     * @param file the image file to be decoded
+     */
+    public DecodeTask(Path file) {
+      this(file, 0);
+    }
+
+    /**
+     * @param file    the image file to be decoded
+     * @param maxSize if the image is wider or higher than this, it is downsampled (keeping the ratio) to fit into maxSize x maxSize. 0=full resolution
+     */
+    public DecodeTask(Path file, int maxSize) {
+      this.file = file;
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected Image call() throws Exception {
+      updateProgress(0, 1);
+      readThumbnail();
+      if (maxSize > 0) readOriginalSize();
+      boolean downsample = maxSize > 0 && (originalWidth > maxSize || originalHeight > maxSize);
+
+      Image decoded;
+      try (InputStream inputStream = new CancellableInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        if (downsample)
+          decoded = new Image(inputStream, maxSize, maxSize, true, true); //preserve ratio, smooth
+        else
+          decoded = new Image(inputStream);
+      } catch (Throwable e) { //especially OutOfMemoryError
+        failure = e;
+        throw (e instanceof Exception exception) ? exception : new Exception(e);
+      }
+
+      if (isCancelled())
+        throw new CancellationException();
+      if (decoded.isError()) {
+        failure = (decoded.getException() != null) ? decoded.getException() : new Exception("image.IsError");
+        throw (failure instanceof Exception exception) ? exception : new Exception(failure);
+      }
+
+      image = decoded;
+      if (thumbnailMissing) {
+        try {
+          requestThumbnail(decoded);
+        } catch (Exception | OutOfMemoryError e) {
+          //nothing to do: the image is shown anyway, just no thumbnail for the next time
+        }
+      }
+      updateProgress(1, 1);
+      return decoded;
+    }
+
+    /**
+     * stage one: get the thumbnail from the persistent ThumbnailCache or, for jpg files, read only the header
+     * and take the thumbnail embedded in the Exif header (usually 160x120) which is then stored in the ThumbnailCache.
+     * If there is none it is made from the decoded image for the next time (see requestThumbnail()).
+     * The thumbnail is published as intermediate value (valueProperty) to be shown until the image is decoded
+     */
+    private void readThumbnail() {
+      ThumbnailCache thumbnailCache = ThumbnailCache.getInstance();
+      byte[] thumbnailBytes = thumbnailCache.lookup(file);
+      if (thumbnailBytes == null) {
+        thumbnailBytes = ThumbnailCache.readExifThumbnail(file);
+        if (thumbnailBytes != null)
+          thumbnailCache.store(file, thumbnailBytes);
+        else
+          thumbnailMissing = true;
+      }
+
+      if (thumbnailBytes != null && !isCancelled()) {
+        Image decodedThumbnail = new Image(new ByteArrayInputStream(thumbnailBytes));
+        if (!decodedThumbnail.isError()) {
+          thumbnail = decodedThumbnail;
+          updateValue(decodedThumbnail);
+        }
+      }
+    }
+
+    /**
+     * hand the decoded image over to the ThumbnailCache, so that the file needn't be decoded a second time just for the thumbnail
+     * only about every n-th pixel is copied (about 2*THUMBNAIL_SIZE per side), scaling and encoding is done by the ThumbnailCache's worker
+     *
+     * @param decoded the decoded image
+     */
+    private void requestThumbnail(Image decoded) {
+      PixelReader pixelReader = decoded.getPixelReader();
+      if (pixelReader == null) return;
+
+      int decodedWidth = (int) decoded.getWidth();
+      int decodedHeight = (int) decoded.getHeight();
+      int step = Math.max(1, Math.max(decodedWidth, decodedHeight) / (2 * ThumbnailCache.THUMBNAIL_SIZE));
+      int width = Math.max(1, decodedWidth / step);
+      int height = Math.max(1, decodedHeight / step);
+      BufferedImage subsampled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      for (int y = 0; y < height; y++)
+        for (int x = 0; x < width; x++)
+          subsampled.setRGB(x, y, pixelReader.getArgb(x * step, y * step));
+      ThumbnailCache.getInstance().requestThumbnail(file, subsampled);
+    }
+
+    /**
+     * read width and height from the image's header without decoding it
+     * if not possible the size remains unknown (0)
+     */
+    private void readOriginalSize() {
+      try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(file.toFile())) {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+        if (readers.hasNext()) {
+          ImageReader reader = readers.next();
+          try {
+            reader.setInput(imageInputStream, true, true);
+            originalWidth = reader.getWidth(0);
+            originalHeight = reader.getHeight(0);
+          } finally {
+            reader.dispose();
+          }
+        }
+      } catch (Exception e) {
+        //nothing to do: size unknown --> decode in full resolution
+      }
+    }
+
+    /**
+     * @return the file which is decoded by this task
+     */
+    public Path getFile() {
+      return file;
+    }
+
+    /**
+     * thread safe
+     *
+     * @return true if the image has been decoded successfully in less than its original resolution
+     */
+    public boolean isDownsampled() {
+      Image decoded = image;
+      return decoded != null && decoded.getWidth() < originalWidth;
+    }
+
+    /**
+     * thread safe
+     *
+     * @return how many pixels of the original image are represented by one pixel of the decoded image (1 if not downsampled)
+     */
+    public double getDownsamplingFactor() {
+      if (isDownsampled())
+        return originalWidth / image.getWidth();
+      else
+        return 1;
+    }
+
+    /**
+     * thread safe
+     *
+     * @return the decoded image or null if not (yet) decoded successfully
+     */
+    public Image getImage() {
+      return image;
+    }
+
+    /**
+     * thread safe
+     *
+     * @return the thumbnail embedded in the Exif header or null if not available (yet)
+     */
+    public Image getThumbnail() {
+      return thumbnail;
+    }
+
+    /**
+     * thread safe
+     *
+     * @return the reason why decoding failed or null if there was no failure (yet)
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    /**
+     * the image decoder reads the file via this stream, so that decoding of a cancelled task stops as soon as possible
+     */
+    private class CancellableInputStream extends FilterInputStream {
+      CancellableInputStream(InputStream in) {
+        super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+        checkCancelled();
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        return super.read(b, off, len);
+      }
+
+      private void checkCancelled() throws IOException {
+        if (isCancelled()) throw new IOException("decoding cancelled");
+      }
+    }
+  }
+}
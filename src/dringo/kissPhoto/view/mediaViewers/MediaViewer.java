@@ -21,6 +21,7 @@ import javafx.scene.layout.StackPane;
  *
  * @author Dringo
  * @since 2020-12-13  common father class introduced to all MediaViewers
+ * @version 2026-10-17 preloadMediaContent with priority
  * @version 2020-12-20 now the viewer has to provide the object to be cached with MediaFile (because it's a view's implementation how to laod the file)
 */
 
@@ -74,6 +75,16 @@ public class MediaViewer extends StackPane {
     mediaFile.getCachedOrLoadMediaContent(this, false);
     return true;
   }
+
+  /**
+   * try to preload the media content / put it into the cache
+   * viewers that decode their media in background can use the priority (see PhotoViewer), the default ignores it
+   * @param priority how urgent the media will be needed
+   * @return true if this is the viewer which can open the file
+   */
+  public boolean preloadMediaContent(MediaFile mediaFile, ImageDecodeScheduler.Priority priority){
+    return preloadMediaContent(mediaFile);
+  }
   /**
    * call this before setting PlayerViewer to null, e.g. to end internal thread
    */
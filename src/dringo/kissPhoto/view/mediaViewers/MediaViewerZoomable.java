@@ -19,6 +19,7 @@ import javafx.scene.input.*;
  * All routines for Zooming an moving with the viewport are same for these classes and therefore implemented here uniquely
  *
  * @author Dringo
+ * @version 2026-10-17 support for media displayed downsampled (zoom100, handleZoomChanged, rescaleViewport)
  * @version 2022-09-01 touch zoom fixed again for touch screen (touch panel worked already)
  * @version 2021-11-01 simple touch support added
  * @version 2017-10-08 fixed: while zooming not the complete space of the surrounding Pane has been used
@@ -102,10 +103,11 @@ public abstract class MediaViewerZoomable extends MediaViewer implements Zoomabl
 
   /**
    * zoom to 100% i.e. one pixel of the image is one pixel of the screen
+   * if the media is displayed downsampled one pixel of the original image is meant
    */
   public void zoom100() {
     if (getViewport() == null) initializeZooming();
-    zoom(1);
+    zoom(getMediaDownsamplingFactor());
   }
 
 
@@ -129,6 +131,7 @@ public abstract class MediaViewerZoomable extends MediaViewer implements Zoomabl
 
     setViewport(new Rectangle2D(minX, minY, newWidth, newHeight));
     zoomFactor = newZoomFactor;
+    handleZoomChanged();
   }
 
   /**
@@ -160,6 +163,38 @@ public abstract class MediaViewerZoomable extends MediaViewer implements Zoomabl
 
     setViewport(new Rectangle2D(newMinX, newMinY, newWidth, newHeight));
     zoomFactor = newZoomFactor;
+    handleZoomChanged();
+  }
+
+  /**
+   * called after the zoomFactor has been changed
+   * default implementation does nothing. Can be overwritten e.g. to load the media in a higher resolution (see PhotoViewer)
+   */
+  protected void handleZoomChanged() {
+  }
+
+  /**
+   * the displayed media has been replaced by the same media in another resolution (e.g. full resolution instead of screen resolution)
+   * the viewport is converted into the coordinates of the new media, so that the visible part remains the same
+   *
+   * @param scale width of new media / width of old media
+   */
+  protected void rescaleViewport(double scale) {
+    Rectangle2D viewport = getViewport();
+    if (viewport != null) {
+      setViewport(new Rectangle2D(viewport.getMinX() * scale, viewport.getMinY() * scale, viewport.getWidth() * scale, viewport.getHeight() * scale));
+      zoomFactor = zoomFactor / scale;
+    }
+  }
+
+  /**
+   * default implementation: the media is displayed in its original resolution
+   * can be overwritten if the media is displayed downsampled (see PhotoViewer)
+   *
+   * @return how many pixels of the original media are represented by one pixel of the displayed media
+   */
+  protected double getMediaDownsamplingFactor() {
+    return 1;
   }
 
   /**
@@ -1,11 +1,13 @@
 package dringo.kissPhoto.view.mediaViewers;
 
+import dringo.kissPhoto.KissPhoto;
 import dringo.kissPhoto.model.ImageFile;
 import dringo.kissPhoto.model.MediaFile;
 import dringo.kissPhoto.view.MediaContentView;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.stage.Screen;
 
 import java.nio.file.Path;
 import java.util.concurrent.CancellationException;
@@ -27,6 +29,9 @@ import java.util.concurrent.CancellationException;
  *
  * @author Dringo
  * @since 2014-05-25
+ * @version 2026-10-17: the Exif thumbnail is shown until the image is decoded
+ * @version 2026-10-17: images are decoded in screen resolution, full resolution is loaded only when zooming beyond 1:1
+ * @version 2026-10-17: images are decoded by ImageDecodeScheduler (bounded worker pool with priorities) instead of background loading Images
  * @version 2024-10-06: retry problem solved: after reload it is now not only set into cache but also displayed. Code cleaned.
  * @version 2022-10-15: retry problem solved: no more infinite retries
  * @version 2020-12-20: MediaFile-Type and cache content is now controlled by the viewers: only they know what they accept and what should be cached to speed up viewing
@@ -61,7 +66,11 @@ public class PhotoViewer extends MediaViewerZoomable{
           filename.endsWith(".ico");
   }
 
+  private static final String DECODE_TO_SCREEN_SIZE = "PhotoViewer_decodeToScreenSize"; //id in global settings: false=always decode in full resolution
+
   private final ImageView imageView = new ImageView();
+  private ImageDecodeScheduler.DecodeTask shownDecodeTask = null;     //the decode task of the image currently shown
+  private ImageDecodeScheduler.DecodeTask fullResolutionTask = null;  //decodes the shown image in full resolution when zooming beyond 1:1 (not cached)
 
   /**
    * constructor to initialize the viewer
@@ -107,22 +116,46 @@ public class PhotoViewer extends MediaViewerZoomable{
       return false;
     }
 
-    Image image = (Image) imageFile.getCachedOrLoadMediaContent(this, false);  //when load: retry in exceptionProperty-Handler in getViewerSpecificMediaContent
-    refreshViewIfCurrentMediaFile(mediaFile, image);
+    Object content = imageFile.getCachedOrLoadMediaContent(this, false);  //when load: retry in exceptionProperty-Handler in getViewerSpecificMediaContent
+    ImageDecodeScheduler.prioritize(content, ImageDecodeScheduler.Priority.CURRENT); //if it is still waiting for decoding (e.g. preloaded) it is needed now
+    refreshViewIfCurrentMediaFile(mediaFile, content);
+    return true;
+  }
+
+  /**
+   * try to preload the image / put it into the cache
+   * The priority of the decoding is set according to the position of the mediaFile relative to the current one
+   *
+   * @return true if this is the viewer which can open the file
+   */
+  @Override
+  public boolean preloadMediaContent(MediaFile mediaFile, ImageDecodeScheduler.Priority priority) {
+    Object content = mediaFile.getCachedOrLoadMediaContent(this, false);
+    ImageDecodeScheduler.prioritize(content, priority);
     return true;
   }
 
   /**
    * show image in viewer, if the mediaFile is the currently shown mediaFile (therefore preloaded files are not directly shown)
    * @param mediaFile
-   * @param media     needs to be an Image object
+   * @param media     an Image object or a DecodeTask (if it has not been decoded yet nothing is shown until its onSucceeded handler refreshes the view)
    * @return true if it was the current mediaFile
    */
   @Override
   public boolean refreshViewIfCurrentMediaFile(MediaFile mediaFile, Object media) {
     if (super.refreshViewIfCurrentMediaFile(mediaFile, media)) {
-      if (media instanceof Image) {
-        imageView.setImage((Image) media);
+      if (media instanceof Image image) {
+        cancelFullResolution();
+        shownDecodeTask = null;
+        imageView.setImage(image);
+      } else if (media instanceof ImageDecodeScheduler.DecodeTask decodeTask) {
+        if (decodeTask != shownDecodeTask) {
+          cancelFullResolution();
+          shownDecodeTask = decodeTask;
+        }
+        if (fullResolutionTask == null || fullResolutionTask.getImage() == null) //don't replace an already loaded full resolution
+          showDecodedOrThumbnail(decodeTask);
+        handleZoomChanged(); //zooming might be active already when the image arrives
       }
       return true;
     } else {
@@ -130,38 +163,127 @@ public class PhotoViewer extends MediaViewerZoomable{
     }
   }
 
+  /**
+   * show the decoded image or, while it is still decoding, the thumbnail embedded in its Exif header (if any)
+   * If the image replaces the thumbnail while zooming is active the viewport is converted to the image's resolution
+   *
+   * @param decodeTask the task that decodes the image to be shown
+   */
+  private void showDecodedOrThumbnail(ImageDecodeScheduler.DecodeTask decodeTask) {
+    Image image = decodeTask.getImage();
+    Image thumbnail = decodeTask.getThumbnail();
+    if (image != null) {
+      if (thumbnail != null && imageView.getImage() == thumbnail) {
+        imageView.setImage(image);
+        rescaleViewport(image.getWidth() / thumbnail.getWidth());
+      } else {
+        imageView.setImage(image);
+      }
+    } else {
+      imageView.setImage(thumbnail); //null if no thumbnail (yet)
+    }
+  }
+
   /**
    * load an image specified by "FileOnDisk" property
    *
-   * @return Image if successful or null if not
-   * note: because I use backgroundLoading null is never returned
-   * instead exceptionPropertyHandler will recursively try to reload by calling getCachedOrLeadMediaContent again
+   * @return DecodeTask which decodes the image in background (see ImageDecodeScheduler) or null if mediaFile is no ImageFile
+   * note: if decoding fails the exceptionPropertyHandler will recursively try to reload by calling getCachedOrLoadMediaContent again
    * @param mediaFile file from which the mediaContent needs to be loaded
    */
   @Override
   public Object getViewerSpecificMediaContent(MediaFile mediaFile) {
     if (!(mediaFile instanceof ImageFile)) return null;
 
-    Image image= null;
+    ImageDecodeScheduler.DecodeTask decodeTask = new ImageDecodeScheduler.DecodeTask(mediaFile.getFileOnDisk(), getDisplayDecodeSize());
+
+    //show it as soon as it is decoded (if it is still the current mediaFile then)
+    decodeTask.setOnSucceeded(event -> refreshViewIfCurrentMediaFile(mediaFile, decodeTask));
+    //show the embedded thumbnail while decoding (it is published as intermediate value of the task)
+    decodeTask.valueProperty().addListener((observable, oldValue, newValue) -> {
+      if (newValue != null && decodeTask.getImage() == null) refreshViewIfCurrentMediaFile(mediaFile, decodeTask);
+    });
+
+    //install error-listener for background-loading
+    decodeTask.exceptionProperty().addListener((exception, oldValue, newValue) -> {
+      if (newValue != null && !(newValue instanceof CancellationException) && mediaFile.retryCounterNotExceeded()) {  //cancellations will not be retried (see MediaFileList.preLoadMedia()) AND retryCounterNotExceeded() maintains the retry-Counter and prevents from infinite retries
+        System.out.println("---image loading failed for " + mediaFile.getResultingFilename() + ": " + newValue);
+        System.out.println("!!!PhotoViewer->getViewerSpecificMediaContent: retry=" + mediaFile.getLoadRetryCounter() + " loading " + mediaFile.getResultingFilename());
+        Object reloadedContent = mediaFile.getCachedOrLoadMediaContent(this, true);
+        refreshViewIfCurrentMediaFile(mediaFile, reloadedContent);
+      }
+    });
+
+    ImageDecodeScheduler.schedule(decodeTask, ImageDecodeScheduler.Priority.SPECULATIVE); //the caller raises the priority if needed
+    return decodeTask;
+  }
+
+
+  /**
+   * The cached images are decoded in the resolution of the largest screen (or this viewer if it is even larger),
+   * so that they can be shown in the main window and in the full screen window without loss of quality.
+   * This can be switched off in the global settings (PhotoViewer_decodeToScreenSize=false)
+   *
+   * @return max width and height of the decoded images or 0 for full resolution
+   */
+  private int getDisplayDecodeSize() {
     try {
-      image = new Image(mediaFile.getFileOnDisk().toUri().toString(), true);  //true=load in Background
-
-      //install error-listener for background-loading
-      image.exceptionProperty().addListener((exception, oldValue, newValue) -> {
-        if (!(exception.getValue() instanceof CancellationException) && mediaFile.retryCounterNotExceeded()) {  //cancellations will not be retried (see MediaFileList.preLoadMedia()) AND retryCounterNotExceeded() maintains the retry-Counter and prevents from infinite retries
-          System.out.println("---image loading failed for " + mediaFile.getResultingFilename() + ": " + exception.toString());
-          System.out.println("!!!PhotoViewer->getViewerSpecificMediaContent: retry=" + mediaFile.getLoadRetryCounter() + " loading " + mediaFile.getResultingFilename());
-          Image reloadedImage = (Image) mediaFile.getCachedOrLoadMediaContent(this, true);
-          refreshViewIfCurrentMediaFile(mediaFile, reloadedImage);
+      String setting = KissPhoto.globalSettings.getProperty(DECODE_TO_SCREEN_SIZE);
+      if (setting != null && !Boolean.parseBoolean(setting.trim())) return 0;
+    } catch (Exception e) {
+      //no settings: use the default (decode to screen size)
+    }
+
+    //the square of the longest side: the image might be shown rotated by 90 degrees
+    double size = Math.max(getWidth(), getHeight());
+    for (Screen screen : Screen.getScreens()) {
+      Rectangle2D bounds = screen.getBounds();
+      size = Math.max(size, Math.max(bounds.getWidth() * screen.getOutputScaleX(), bounds.getHeight() * screen.getOutputScaleY()));
+    }
+    return (int) Math.ceil(size);
+  }
+
+  /**
+   * if zooming goes beyond 1:1 of the shown downsampled image, the image is decoded again in full resolution
+   * and replaces the downsampled image as soon as it is available (the visible part remains the same)
+   * The full resolution image is not put into the cache, it is dropped when another image is shown
+   */
+  @Override
+  protected void handleZoomChanged() {
+    if (getViewport() != null && getZoomFactor() > 1 && fullResolutionTask == null
+      && shownDecodeTask != null && shownDecodeTask.isDownsampled() && imageView.getImage() == shownDecodeTask.getImage()) {
+
+      ImageDecodeScheduler.DecodeTask task = new ImageDecodeScheduler.DecodeTask(shownDecodeTask.getFile());
+      Image downsampledImage = shownDecodeTask.getImage();
+      task.setOnSucceeded(event -> {
+        if (fullResolutionTask == task && imageView.getImage() == downsampledImage) {
+          double scale = task.getImage().getWidth() / downsampledImage.getWidth();
+          imageView.setImage(task.getImage());
+          rescaleViewport(scale);
         }
       });
-    } catch (Exception e) {
-      //will not occur with backgroundLoading: image.getException will get the exception and therefore handled in error-Listener
+      fullResolutionTask = task; //if it fails the downsampled image remains and no further attempt is made for this image
+      ImageDecodeScheduler.schedule(task, ImageDecodeScheduler.Priority.CURRENT);
     }
+  }
 
-    return image;
+  /**
+   * stop decoding the full resolution image and drop it
+   */
+  private void cancelFullResolution() {
+    if (fullResolutionTask != null) {
+      ImageDecodeScheduler.cancel(fullResolutionTask);
+      fullResolutionTask = null;
+    }
   }
 
+  @Override
+  protected double getMediaDownsamplingFactor() {
+    if (shownDecodeTask != null && imageView.getImage() != null && imageView.getImage() == shownDecodeTask.getImage())
+      return shownDecodeTask.getDownsamplingFactor();
+    else
+      return 1; //full resolution is shown
+  }
 
   //----------------------- Implement ZoomableViewer Interface ----------------------------
 
@@ -0,0 +1,128 @@
+package mediautil.image.jpeg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Mediautil reworked for KissPhoto bei Dringo
+ *
+ * Buffered input stream reading a file via positional reads of a FileChannel.
+ * It replaces BufferedInputStream(FileInputStream) for reading jpegs in LLJTran:
+ * the markers and the entropy coded data are read byte by byte, and read() of this
+ * final class is a plain array access (no synchronization, no delegation), so the JIT inlines it
+ * into the marker parser and into the bit reader of the HuffDecoder.
+ * <p>
+ * The file is not memory mapped: on Windows a mapped file can neither be replaced nor deleted
+ * until the mapping is garbage collected, but kissPhoto replaces the files it has just read (see FileRewriter)
+ *
+ * @author Dringo
+ * @since 2026-10-17
+ */
+final class ChannelInputStream extends InputStream {
+  private static final int MIN_BUFFER_SIZE = 1 << 13; //8KB: enough for the header (READ_HEADER) of most images
+  private static final int MAX_BUFFER_SIZE = 1 << 18; //256KB: the buffer grows while reading the image data
+
+  private final FileChannel channel;
+  private final boolean closeChannel;
+  private byte[] buf = new byte[MIN_BUFFER_SIZE];
+  private ByteBuffer buffer = ByteBuffer.wrap(buf);
+  private int pos, limit;   //next byte to read and end of valid data in buf
+  private long position;    //position in the file of buf[limit]
+
+  /**
+   * @param channel      channel of the file to read
+   * @param position     position in the file to start reading
+   * @param closeChannel true if close() closes the channel
+   */
+  ChannelInputStream(FileChannel channel, long position, boolean closeChannel) {
+    this.channel = channel;
+    this.position = position;
+    this.closeChannel = closeChannel;
+  }
+
+  /**
+   * @param file the file to read from its start
+   * @return a stream that closes the file on close()
+   * @throws IOException if the file cannot be opened
+   */
+  static ChannelInputStream open(File file) throws IOException {
+    return new ChannelInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ), 0, true);
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pos == limit && !fill())
+      return -1;
+    return buf[pos++] & 255;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0)
+      return 0;
+    if (pos == limit) {
+      if (len >= buf.length) { //large blocks (e.g. appx markers) are read without copying
+        int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (n > 0)
+          position += n;
+        return n > 0 ? n : -1;
+      }
+      if (!fill())
+        return -1;
+    }
+    int n = Math.min(len, limit - pos);
+    System.arraycopy(buf, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0)
+      return 0;
+    int buffered = limit - pos;
+    if (n <= buffered) {
+      pos += (int) n;
+      return n;
+    }
+    long skipped = Math.min(n - buffered, Math.max(0, channel.size() - position));
+    position += skipped;
+    pos = limit = 0;
+    return buffered + skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    long remaining = limit - pos + Math.max(0, channel.size() - position);
+    return (int) Math.min(remaining, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    pos = limit = 0;
+    if (closeChannel)
+      channel.close();
+  }
+
+  // read the next block of the file into buf, false at the end of the file
+  private boolean fill() throws IOException {
+    if (limit == buf.length && buf.length < MAX_BUFFER_SIZE) { //the whole buffer has been consumed: the next block is read larger
+      buf = new byte[buf.length * 2];
+      buffer = ByteBuffer.wrap(buf);
+    }
+    buffer.clear();
+    int n = channel.read(buffer, position);
+    if (n <= 0)
+      return false;
+    position += n;
+    pos = 0;
+    limit = n;
+    return true;
+  }
+}
@@ -35,7 +35,7 @@ class IterativeReadVars {
   //Vars for readDCT
   public double currentProgress, callbackProgress, progressPerMcu;
   public int[] last_dc;
-  public int[][] DCT;
+  public int[] DCT;
   public int next_restart_num;
   public int ix, iy;
 }
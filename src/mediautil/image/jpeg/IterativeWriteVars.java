@@ -9,6 +9,7 @@ import java.io.OutputStream;
  * It holds all variables ("a record") for writing
  * It is used in LLJTran
  *
+ * @version 2026-10-17 parallelEncoding added
  * @version 2021-11-09 I extracted it into an own file for better Java compatibility and changed all c-like definitions into Java definitions
  * @since 2021-11-09
  * @author Dringo. Originally Dmitriy Rogatkin and Suresh Mahalingam (msuresh@cheerful.com)
@@ -45,7 +46,7 @@ class IterativeWriteVars {
 
   // initWriteDCT vars
   public boolean transformDct;
-  public int[][][][][] new_dct_coefs;
+  public int[][][][] new_dct_coefs;
 
   public double currentProgress, callbackProgress, progressPerMcu;
   public int[] last_dc;
@@ -65,6 +66,9 @@ class IterativeWriteVars {
   // or if the rows of old dct array can be reused.
   public boolean reuseDctRows = true;
 
+  // restart intervals are encoded by parallel workers, see LLJTran.writeIntervalsParallel()
+  public boolean parallelEncoding;
+
   public void freeMemory() {
     huffTables = null;
     new_dct_coefs = null;
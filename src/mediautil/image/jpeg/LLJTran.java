@@ -35,6 +35,13 @@ import mediautil.gen.directio.IterativeWriter;
 
 import java.awt.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * LLJTran is a class for Lossless Jpeg Transformation.<p>
@@ -151,6 +158,42 @@ public class LLJTran extends BasicJpegIo
    */
   public static final int COMMENT = 9;
 
+  // combinedOps[first][second] is the single transformation equivalent to
+  // first applying first and then second (NONE..ROT_270, the dihedral group
+  // of the square)
+  private static final int[][] combinedOps = {
+    {NONE, FLIP_H, FLIP_V, TRANSPOSE, TRANSVERSE, ROT_90, ROT_180, ROT_270},
+    {FLIP_H, NONE, ROT_180, ROT_270, ROT_90, TRANSVERSE, FLIP_V, TRANSPOSE},
+    {FLIP_V, ROT_180, NONE, ROT_90, ROT_270, TRANSPOSE, FLIP_H, TRANSVERSE},
+    {TRANSPOSE, ROT_90, ROT_270, NONE, ROT_180, FLIP_H, TRANSVERSE, FLIP_V},
+    {TRANSVERSE, ROT_270, ROT_90, ROT_180, NONE, FLIP_V, TRANSPOSE, FLIP_H},
+    {ROT_90, TRANSPOSE, TRANSVERSE, FLIP_V, FLIP_H, ROT_180, ROT_270, NONE},
+    {ROT_180, FLIP_V, FLIP_H, TRANSVERSE, TRANSPOSE, ROT_270, NONE, ROT_90},
+    {ROT_270, TRANSVERSE, TRANSPOSE, FLIP_H, FLIP_V, NONE, ROT_90, ROT_180}
+  };
+
+  /**
+   * Combines a sequence of transformations into the single equivalent
+   * transformation, so that the coefficients need to be transformed only
+   * once, e.g. ROT_90 followed by FLIP_H is TRANSPOSE.
+   *
+   * @param ops Transformations NONE..ROT_270 in the order they are to be
+   *            applied. CROP is treated as NONE
+   * @return the transformation NONE..ROT_270 which has the same effect as
+   * applying all ops one after the other
+   */
+  public static int combineTransformations(int... ops) {
+    int combined = NONE;
+    for (int op : ops) {
+      if (op == CROP)
+        op = NONE;
+      if (op < NONE || op > ROT_270)
+        throw new IllegalArgumentException("Not a transformation: " + op);
+      combined = combinedOps[combined][op];
+    }
+    return combined;
+  }
+
   protected static final int DCTSIZE2 = 64;
   protected static final int DCTSIZE = 8;
   protected static final int BYTE_SIZE = 8;
@@ -269,6 +312,7 @@ public class LLJTran extends BasicJpegIo
   /**
    * Flag to specify that the Huffman tables should be optimized before
    * saving the image. This leads to a slightly reduced image file size.
+   * The symbol statistics are gathered in parallel for bands of MCU rows.
    */
   public final static int OPT_WRITE_OPTIMIZE_HUFF = 0x400;
   /**
@@ -336,6 +380,12 @@ public class LLJTran extends BasicJpegIo
   /* For Huffman Table Generation. assumed maximum initial code length before
    * the JPEG mandate of limiting it to 16 is done. */
   private static final int MAX_CLEN = 32;
+  // minimum number of MCU rows per band for gathering the symbol statistics in parallel
+  private static final int MIN_STATS_BAND_ROWS = 16;
+  // minimum number of MCUs of an image to be decoded in parallel
+  private static final int MIN_PARALLEL_DECODE_MCUS = 1024;
+  // minimum number of MCUs of an image to be encoded in parallel
+  private static final int MIN_PARALLEL_ENCODE_MCUS = 1024;
 
   private static final int MAX_APPXS_BLOCKLEN = 1024;
 
@@ -675,10 +725,10 @@ public class LLJTran extends BasicJpegIo
           else
             valid = false;
         } else {
-          return new BufferedInputStream(new FileInputStream(file));
+          return ChannelInputStream.open(file);
         }
       }
-    } catch (FileNotFoundException e) {
+    } catch (IOException e) {
       valid = false;
     }
     return null;
@@ -743,6 +793,30 @@ public class LLJTran extends BasicJpegIo
     writeProgressCallback = callback;
   }
 
+  /**
+   * Sets if images with restart markers are decoded using several threads
+   * when reading the image data from a file. Default is true.
+   *
+   * @param parallel true for parallel decoding if possible, false to
+   *                 always decode sequentially
+   */
+  public void setParallelDecoding(boolean parallel) {
+    parallelDecoding = parallel;
+  }
+
+  /**
+   * Sets if images are encoded using several threads when they are written
+   * with restart markers (restart_interval of save() or transform()).
+   * Every restart interval is encoded independently and the results are
+   * written in their order. Default is true.
+   *
+   * @param parallel true for parallel encoding if possible, false to
+   *                 always encode sequentially
+   */
+  public void setParallelEncoding(boolean parallel) {
+    parallelEncoding = parallel;
+  }
+
   /**
    * Gets the current Callback Object for Image Read progress or null if no
    * callback is present.
@@ -1211,7 +1285,7 @@ public class LLJTran extends BasicJpegIo
       options &= ~OPT_XFORM_APPX;
     if ((options & OPT_XFORM_APPX) == 0)
       options &= ~OPT_XFORM_THUMBNAIL;
-    if (readUpto < READ_ALL)
+    if (readUpto < READ_ALL && rowStreamer == null)
       throw new RuntimeException("Transform cannot be performed since No Jpeg has been successfully Read");
     if (op == CROP)
       validateCropBounds(bounds);
@@ -1325,6 +1399,75 @@ public class LLJTran extends BasicJpegIo
     do ; while (nextWrite(10000000) == IterativeReader.CONTINUE);
   }
 
+  /**
+   * Checks if a transformation can be performed by transformStreaming.
+   *
+   * @param op Specifies the transformation like NONE, ROT_90 etc
+   * @return true for NONE, FLIP_H, FLIP_V and ROT_180, i.e. the
+   * transformations which keep every MCU row in one row
+   */
+  public static boolean canTransformStreaming(int op) {
+    return op == NONE || op == FLIP_H || op == FLIP_V || op == ROT_180;
+  }
+
+  /**
+   * Transforms the image while it is read and writes it to outStream. Only
+   * a few MCU rows are held in memory at the same time, so that the memory
+   * needed does not depend on the size of the image.<p>
+   * <p>
+   * The image must have been read upto READ_HEADER (and not further) from a
+   * File. The image data is then read row by row as the transformed image is
+   * written: in order for NONE and FLIP_H. For FLIP_V and ROT_180 the rows
+   * are needed from bottom to top, so the image data is decoded once
+   * to remember where each row starts and then every row is decoded again
+   * from its position in the file (i.e. the image data is decoded twice).<p>
+   * <p>
+   * The LLJTran object is useless after the call like after writing in
+   * pullDownMode. OPT_WRITE_OPTIMIZE_HUFF is ignored since it needs all
+   * coefficients before writing.
+   *
+   * @param outStream Output Stream to which the jpeg image should be written
+   * @param op        One of the transformations for which canTransformStreaming
+   *                  is true
+   * @param options   Options specifies how to manage exif or other header
+   *                  content and also the header information to write. Please pass a
+   *                  bitwise OR (|) of the required set of OPT_XFORM_.. and OPT_WRITE_..
+   *                  flags.
+   * @throws IOException if the image data cannot be read or the image cannot
+   *                     be written
+   */
+  public void transformStreaming(OutputStream outStream, int op, int options)
+    throws IOException {
+    if (!canTransformStreaming(op))
+      throw new IllegalArgumentException("Transformation cannot be performed while reading: " + op);
+    if (readUpto != READ_HEADER || unprocessed_marker != M_SOS || currentStream == null || !canBeProcessed)
+      throw new IllegalStateException("transformStreaming needs an image which has been read upto READ_HEADER (" + getLocationName() + ")");
+    if (file == null && (op == FLIP_V || op == ROT_180))
+      throw new IllegalStateException("Vertical flipping while reading needs a File as input");
+
+    try {
+      // continue reading with the scan header
+      unprocessed_marker = 0;
+      iReadVars.is = currentStream;
+      readMarker(currentStream);
+      readScanHeader();
+      initReadDCT();
+      rowStreamer = new RowStreamer(op == FLIP_V || op == ROT_180);
+
+      IterativeWriter iWriter = initWrite(outStream, op,
+        options & ~OPT_WRITE_OPTIMIZE_HUFF, null, 0, true);
+      do ; while (iWriter.nextWrite(10000000) == IterativeReader.CONTINUE);
+    } finally {
+      if (rowStreamer != null)
+        rowStreamer.close();
+      rowStreamer = null;
+      decoder = null;
+      iReadVars.last_dc = null;
+      iReadVars.DCT = null;
+      freeMemory();
+    }
+  }
+
   private byte[] generateHuffTables(HuffGenerator huff) throws IOException {
     int c, htInfo;
     byte retVal[];
@@ -1629,21 +1772,9 @@ public class LLJTran extends BasicJpegIo
           if (huffGen == null)
             huffGen = new HuffGenerator();
           huffGen.init();
-          gatheringStats = true;
           // Dry Run to get frequency counts of DC/AC symbols to be encoded
-          // No output is written. The transforming routines like
-          // rotate90DCT called by writeDCT also honour gatheringStats
-          // variable and do not actually modify the DCT array.
-          try {
-            writeDCT(null, op, options, 0, false);
-          } catch (IOException e) {
-            if (Log.debugLevel >= Log.LEVEL_ERROR) {
-              System.err.println("Totally Unexpected IOException: " + e.getMessage());
-              e.printStackTrace(System.err);
-            }
-          }
-          // Disable Stat gathering and enabling writeDCT to write output
-          gatheringStats = false;
+          // No output is written and the DCT array is not modified.
+          gatherHuffStats(op, options, restart_interval);
           lHuffGen = huffGen;
         }
         huffTables = generateHuffTables(lHuffGen); // Load the new Huffman tables
@@ -2392,21 +2523,9 @@ public class LLJTran extends BasicJpegIo
 
             len = readMarker(is);
             if (canBeProcessed) { //22
-              components_in_scan = data[0] & 255;
-              pos = 1;
-              comp_ids = new int[components_in_scan];
-              dc_table = new int[components_in_scan];
-              ac_table = new int[components_in_scan];
-              for (int i = 0; i < components_in_scan; i++) {
-                comp_ids[i] = data[pos++] & 255;
-                dc_table[i] = (data[pos] >> 4) & 15;
-                ac_table[i] = data[pos++] & 15;
-              }
-              _Ss = data[pos++] & 255;
-              _Se = data[pos++] & 255;
-              _Ah = (data[pos] >> 4) & 15;
-              _Al = data[pos] & 15;
+              readScanHeader();
               initReadDCT();
+              readDCTParallel(); // if possible, else sequentially in READING_DCT_STAGE
               stage = IterativeReadVars.READING_DCT_STAGE;
             } else {
               addMarker(len, markercode);
@@ -2596,6 +2715,37 @@ public class LLJTran extends BasicJpegIo
    */
   public void xferInfo(InputStream is, OutputStream os, int appxsOption,
                        int commentOption) throws LLJTranException {
+    xferInfo(is, os, appxsOption, commentOption, null, null);
+  }
+
+  /**
+   * Same as {@link #xferInfo(InputStream, OutputStream, int, int)
+   * xferInfo(..)} for files: the markers are copied like there, but the
+   * image data after the scan header (which is by far the largest part of
+   * the file) is copied by FileChannel.transferTo, i.e. without passing
+   * through java (the operating system might even copy it without reading
+   * it). The image is read from the current position of in and written
+   * from the current position of out. Both channels are not closed.
+   *
+   * @param in            Image input to change the Image Header Information
+   * @param out           Output to write the image to
+   * @param appxsOption   One of RETAIN, REPLACE or REMOVE, see xferInfo(..)
+   * @param commentOption One of RETAIN, REPLACE or REMOVE, see xferInfo(..)
+   * @see #xferInfo(InputStream, OutputStream, int, int)
+   */
+  public void xferInfo(FileChannel in, WritableByteChannel out, int appxsOption,
+                       int commentOption) throws LLJTranException {
+    // The markers are read unbuffered, so that the position of in is
+    // exactly behind the scan header when the image data is transferred.
+    // The header consists of a few markers only.
+    OutputStream os = new BufferedOutputStream(Channels.newOutputStream(out));
+    xferInfo(Channels.newInputStream(in), os, appxsOption, commentOption,
+      in, out);
+  }
+
+  private void xferInfo(InputStream is, OutputStream os, int appxsOption,
+                        int commentOption, FileChannel scanIn,
+                        WritableByteChannel scanOut) throws LLJTranException {
     String msg = null;
     int pendingMarker = 0;
     int jpegMarkers = 0;
@@ -2701,7 +2851,19 @@ public class LLJTran extends BasicJpegIo
             case M_SOS:
               if (jpegMarkers >= 3) {
                 xferMarker(is, os, markercode, false);
-                xferData(is, os, -1);
+                if (scanIn != null) {
+                  os.flush();
+                  long pos = scanIn.position();
+                  long size = scanIn.size();
+                  while (pos < size) {
+                    long transferred = scanIn.transferTo(pos, size - pos, scanOut);
+                    if (transferred <= 0)
+                      throw new IOException("Image data could not be transferred at " + pos + " (" + getLocationName() + ")");
+                    pos += transferred;
+                  }
+                  scanIn.position(pos);
+                } else
+                  xferData(is, os, -1);
                 os.flush();
                 break markers;
               } else
@@ -3685,11 +3847,35 @@ public class LLJTran extends BasicJpegIo
 
   private HuffDecoder decoder;
 
+  // Source of the rows of dct_coefs while transforming with
+  // transformStreaming, null otherwise
+  private RowStreamer rowStreamer;
+
+  /**
+   * Internal method to get the scan parameters from the SOS marker in data
+   */
+  private void readScanHeader() {
+    components_in_scan = data[0] & 255;
+    int pos = 1;
+    comp_ids = new int[components_in_scan];
+    dc_table = new int[components_in_scan];
+    ac_table = new int[components_in_scan];
+    for (int i = 0; i < components_in_scan; i++) {
+      comp_ids[i] = data[pos++] & 255;
+      dc_table[i] = (data[pos] >> 4) & 15;
+      ac_table[i] = data[pos++] & 15;
+    }
+    _Ss = data[pos++] & 255;
+    _Se = data[pos++] & 255;
+    _Ah = (data[pos] >> 4) & 15;
+    _Al = data[pos] & 15;
+  }
+
   private void initReadDCT() throws IOException {
     iReadVars.currentProgress = 0.01;
     iReadVars.callbackProgress = 0;
     iReadVars.last_dc = new int[components_in_scan];
-    iReadVars.DCT = new int[2][DCTSIZE2];
+    iReadVars.DCT = new int[DCTSIZE2];
     iReadVars.next_restart_num = 0;
     restarts_to_go = restart_interval;
     int curcoef;
@@ -3697,7 +3883,7 @@ public class LLJTran extends BasicJpegIo
       if (Log.debugLevel >= Log.LEVEL_ERROR)
         System.err.println("Not sequential image, Ss=" + _Ss + " Se=" + _Se + " Ah=" + _Ah + " Al=" + _Al);
     decoder = new HuffDecoder(iReadVars.is);
-    dct_coefs = new int[heightMCU][][][][];
+    dct_coefs = new int[heightMCU][][][];
     iReadVars.progressPerMcu = (0.99 / heightMCU) / widthMCU;
     if (readProgressCallback != null &&
       iReadVars.currentProgress - iReadVars.callbackProgress
@@ -3711,14 +3897,9 @@ public class LLJTran extends BasicJpegIo
   }
 
   private boolean readNextDCT(int numBytes) throws IOException {
-    InputStream is = iReadVars.is;
     int ix = iReadVars.ix;
     int iy = iReadVars.iy;
-    int curcoef;
     int markCounter = readcounter;
-    int[] last_dc = iReadVars.last_dc;
-    int[][] DCT = iReadVars.DCT;
-    int next_restart_num = iReadVars.next_restart_num;
     double currentProgress = iReadVars.currentProgress;
     double progressPerMcu = iReadVars.progressPerMcu;
     double callbackProgress = iReadVars.callbackProgress;
@@ -3727,95 +3908,11 @@ public class LLJTran extends BasicJpegIo
     enough:
     for (; iy < heightMCU; iy++) {
       if (dct_coefs[iy] == null)
-        dct_coefs[iy] = new int[widthMCU][mcusize][][];
+        dct_coefs[iy] = new int[widthMCU][mcusize][];
       for (; ix < widthMCU; ix++) {
         if (readcounter - markCounter >= numBytes)
           break enough;
-        // start decode MCU
-        int mcuc = 0;
-        try {
-          for (int c = 0; c < components_in_scan; c++) {
-            for (int b = 0; b < V[c] * H[c]; b++) {
-              decoder.setTables(false, dc_table[c]);
-              last_dc[c] = decoder.extend(decoder.decode(1)) + last_dc[c];
-              curcoef = 0;
-              DCT[0][curcoef] = last_dc[c];
-              DCT[1][curcoef++] = 0;
-              // decode ACs
-              decoder.setTables(true, ac_table[c]);
-              int ac, v;
-              for (int ci = 1; ci < DCTSIZE2; ci++) {
-                ac = decoder.decode(1);
-                v = (ac >> 4);
-                ac &= 15;
-                if (ac != 0) {
-                  ci += v;
-                  if (ci > DCTSIZE2 - 1) {
-                    if (Log.debugLevel >= Log.LEVEL_ERROR)
-                      System.err.println("Error: Invalid AC index " + ci);
-                    ci = DCTSIZE2 - 1;
-                  }
-                  ac = decoder.extend(ac);
-                  DCT[0][curcoef] = ac;
-                  DCT[1][curcoef++] = ci;
-                } else {
-                  if (v != 15)
-                    break;
-                  ci += v;
-                }
-              }
-              dct_coefs[iy][ix][mcuc] = new int[2][curcoef];
-              System.arraycopy(DCT[0], 0, dct_coefs[iy][ix][mcuc][0], 0, curcoef);
-              System.arraycopy(DCT[1], 0, dct_coefs[iy][ix][mcuc][1], 0, curcoef);
-              mcuc++;
-            }
-          }
-          restarts_to_go--;
-          if (restart_interval != 0 && restarts_to_go == 0) {
-            // We expect a restart marker. Let us see if we find it
-            // correctly
-
-            // First check unprocessed_marker in case restart
-            // marker was encountered before decoding of DCT
-            // block
-            int markercode = unprocessed_marker;
-            unprocessed_marker = 0;
-            if (markercode == 0) {
-              // If no restart marker encountered while decoding
-              // try to read a restart marker
-              markercode = is.read();
-              readcounter++;
-              if (markercode != 0xff)
-                throw new IOException("0x" + Integer.toHexString(markercode) + " found instead of restart marker prefix 0xff at 0x" + Integer.toHexString(readcounter) + " (" + getLocationName() + ")");
-
-              // Skip 0xff filling
-              do {
-                markercode = is.read();
-                readcounter++;
-              } while (markercode == 0xff);
-            }
-            if (markercode == ((M_RST0 & 255) + next_restart_num))
-              next_restart_num = (next_restart_num + 1) & 7;
-            else {
-              if (iy == heightMCU - 1 && ix == widthMCU - 1)
-                // Forgive missing restart marker at the end.
-                // Pass it on as an unprocessed_marker to be
-                // processed by the main loop
-                unprocessed_marker = markercode;
-              else
-                throw new IOException("Restart markers are messed up at " + readcounter + "(0x" + Integer.toHexString(readcounter) + ") (" + getLocationName() + ")");
-            }
-            restarts_to_go = restart_interval;
-            for (int k = 0; k < last_dc.length; k++)
-              last_dc[k] = 0;
-            decoder.restart();
-          } else if (unprocessed_marker != 0)
-            throw new IOException("Unexpected Restart marker 0x" + Integer.toHexString(unprocessed_marker) + " with restart_interval=" + restart_interval + " and restarts_to_go=" + restarts_to_go + " at " + Integer.toHexString(readcounter) + " (" + getLocationName() + ")");
-        } catch (RestartException re) {
-          restarts_to_go = 0;
-          if (Log.debugLevel >= Log.LEVEL_INFO)
-            System.out.println("Restart exception ");
-        }
+        readMCU(dct_coefs[iy][ix], iy == heightMCU - 1 && ix == widthMCU - 1);
         currentProgress += progressPerMcu;
         if (readProgressCallback != null &&
           currentProgress - callbackProgress
@@ -3830,7 +3927,6 @@ public class LLJTran extends BasicJpegIo
 
     iReadVars.ix = ix;
     iReadVars.iy = iy;
-    iReadVars.next_restart_num = next_restart_num;
     iReadVars.currentProgress = currentProgress;
     iReadVars.callbackProgress = callbackProgress;
 
@@ -3845,6 +3941,253 @@ public class LLJTran extends BasicJpegIo
     return retVal;
   }
 
+  /**
+   * Decodes the DCT blocks of the next MCU without the handling of restart
+   * markers
+   *
+   * @param decoder decoder to read from
+   * @param mcu     receives the DCT blocks of the MCU
+   * @param last_dc DC values of the previous blocks of every component
+   * @param DCT     temporary coefficient array
+   */
+  private void decodeMCU(HuffDecoder decoder, int[][] mcu, int[] last_dc,
+                         int[] DCT) throws IOException, RestartException {
+    int curcoef;
+    int mcuc = 0;
+    for (int c = 0; c < components_in_scan; c++) {
+      for (int b = 0; b < V[c] * H[c]; b++) {
+        decoder.setTables(false, dc_table[c]);
+        last_dc[c] = decoder.extend(decoder.decode(1)) + last_dc[c];
+        curcoef = 0;
+        DCT[curcoef++] = packCoef(last_dc[c], 0);
+        // decode ACs
+        decoder.setTables(true, ac_table[c]);
+        int ac, v;
+        for (int ci = 1; ci < DCTSIZE2; ci++) {
+          ac = decoder.decode(1);
+          v = (ac >> 4);
+          ac &= 15;
+          if (ac != 0) {
+            ci += v;
+            if (ci > DCTSIZE2 - 1) {
+              if (Log.debugLevel >= Log.LEVEL_ERROR)
+                System.err.println("Error: Invalid AC index " + ci);
+              ci = DCTSIZE2 - 1;
+            }
+            ac = decoder.extend(ac);
+            DCT[curcoef++] = packCoef(ac, ci);
+          } else {
+            if (v != 15)
+              break;
+            ci += v;
+          }
+        }
+        mcu[mcuc] = new int[curcoef];
+        System.arraycopy(DCT, 0, mcu[mcuc], 0, curcoef);
+        mcuc++;
+      }
+    }
+  }
+
+  /**
+   * Decodes the whole scan at once using several threads if the image has
+   * restart markers: the restart intervals are independent of each other
+   * (the DC values are reset and the entropy coded data is byte aligned).
+   * The scan is read from the file in one go, the restart markers are
+   * located and groups of intervals are decoded in parallel into dct_coefs.
+   * Then the input stream is positioned after the scan as if it had been
+   * read sequentially.
+   *
+   * @return true if the scan has been decoded, false if parallel decoding
+   * is not possible (no restart markers, input is not a file, small image,
+   * restart markers not as expected, corrupted data...). Then the
+   * scan is to be read sequentially, the input stream is unchanged.
+   * @throws IOException if the input stream cannot be positioned after
+   *                     the scan
+   */
+  private boolean readDCTParallel() throws IOException {
+    int mcuCount = widthMCU * heightMCU;
+    int processors = Runtime.getRuntime().availableProcessors();
+    if (!parallelDecoding || restart_interval == 0 || _Ss != 0 || file == null ||
+      inStream != null || iReadVars.is != currentStream || unprocessed_marker != 0 ||
+      mcuCount < MIN_PARALLEL_DECODE_MCUS || processors < 2)
+      return false;
+
+    // the rest of the file starting with the scan
+    long scanStart = readcounter;
+    byte[] scan;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size() - scanStart;
+      if (size <= 0 || size > Integer.MAX_VALUE)
+        return false;
+      scan = new byte[(int) size];
+      ByteBuffer buffer = ByteBuffer.wrap(scan);
+      while (buffer.hasRemaining())
+        if (channel.read(buffer, scanStart + buffer.position()) < 0)
+          return false;
+    }
+
+    int segmentCount = (mcuCount + restart_interval - 1) / restart_interval;
+    int segmentStart[] = new int[segmentCount];
+    int segmentEnd[] = new int[segmentCount];
+    int scanLength = findRestartIntervals(scan, segmentStart, segmentEnd);
+    if (scanLength < 0)
+      return false;
+
+    for (int iy = 0; iy < heightMCU; iy++)
+      if (dct_coefs[iy] == null)
+        dct_coefs[iy] = new int[widthMCU][mcusize][];
+    int tasks = Math.min(segmentCount, processors * 4);
+    try {
+      IntStream.range(0, tasks).parallel().forEach(t -> {
+        int last_dc[] = new int[components_in_scan];
+        int DCT[] = new int[DCTSIZE2];
+        for (int segment = segmentCount * t / tasks; segment < segmentCount * (t + 1) / tasks; segment++) {
+          Arrays.fill(last_dc, 0);
+          SegmentDecoder segmentDecoder = new SegmentDecoder(scan, segmentStart[segment], segmentEnd[segment]);
+          int endMcu = Math.min((segment + 1) * restart_interval, mcuCount);
+          try {
+            for (int m = segment * restart_interval; m < endMcu; m++)
+              decodeMCU(segmentDecoder, dct_coefs[m / widthMCU][m % widthMCU], last_dc, DCT);
+          } catch (IOException | RestartException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      if (Log.debugLevel >= Log.LEVEL_WARNING)
+        System.err.println("Warning: parallel decoding failed, decoding sequentially: " + e.getMessage() + " (" + getLocationName() + ")");
+      return false;
+    }
+
+    // continue reading with the marker after the scan
+    if (BasicIo.skip(iReadVars.is, scanLength) != scanLength)
+      throw new IOException("End of file reached at " + (readcounter + scanLength) + " (" + getLocationName() + ")");
+    readcounter += scanLength;
+    iReadVars.ix = 0;
+    iReadVars.iy = heightMCU;
+    iReadVars.currentProgress += iReadVars.progressPerMcu * mcuCount;
+    if (readProgressCallback != null) {
+      iReadVars.callbackProgress = iReadVars.currentProgress;
+      readProgressCallback.progressHandler(iReadVars.callbackProgress,
+        (int) Math.round(iReadVars.callbackProgress * 100));
+    }
+    return true;
+  }
+
+  /**
+   * Locates the restart intervals in the entropy coded data of a scan
+   *
+   * @param scan         the file starting with the scan
+   * @param segmentStart receives the offsets of the restart intervals in scan
+   * @param segmentEnd   receives the offsets of the ends of the restart
+   *                     intervals (i.e. of the following marker)
+   * @return the length of the scan (offset of the marker following it) or
+   * -1 if the restart markers do not fit to the restart interval
+   */
+  private static int findRestartIntervals(byte[] scan, int[] segmentStart,
+                                          int[] segmentEnd) {
+    int segmentCount = segmentStart.length;
+    int segment = 0;
+    int i = 0;
+    while (i < scan.length) {
+      if ((scan[i++] & 255) != 0xff)
+        continue;
+      int markerStart = i - 1;
+      int marker;
+      do { // Skip 0xff filling
+        if (i >= scan.length)
+          return -1;
+        marker = scan[i++] & 255;
+      } while (marker == 0xff);
+      if (marker == 0)
+        continue; // 0xff followed by 0 means 0xff
+
+      boolean restart = marker >= (M_RST0 & 255) && marker <= (M_RST7 & 255);
+      if (segment < segmentCount) {
+        segmentEnd[segment] = markerStart;
+        if (restart) {
+          if (marker != (M_RST0 & 255) + (segment & 7))
+            return -1;
+          segment++;
+          if (segment < segmentCount)
+            segmentStart[segment] = i;
+          continue;
+        }
+        // end of scan: only allowed after the last interval
+        return segment == segmentCount - 1 ? markerStart : -1;
+      }
+      // a restart marker after the last interval is tolerated (see readMCU)
+      return restart ? -1 : markerStart;
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes the next MCU from iReadVars.is including the handling of
+   * restart markers.
+   *
+   * @param mcu     receives the DCT blocks of the MCU
+   * @param lastMcu true if this is the last MCU of the image: a missing
+   *                restart marker is forgiven at the end
+   */
+  private void readMCU(int[][] mcu, boolean lastMcu) throws IOException {
+    InputStream is = iReadVars.is;
+    int[] last_dc = iReadVars.last_dc;
+    int[] DCT = iReadVars.DCT;
+    int next_restart_num = iReadVars.next_restart_num;
+
+    try {
+      decodeMCU(decoder, mcu, last_dc, DCT);
+      restarts_to_go--;
+      if (restart_interval != 0 && restarts_to_go == 0) {
+        // We expect a restart marker. Let us see if we find it
+        // correctly
+
+        // First check unprocessed_marker in case restart
+        // marker was encountered before decoding of DCT
+        // block
+        int markercode = unprocessed_marker;
+        unprocessed_marker = 0;
+        if (markercode == 0) {
+          // If no restart marker encountered while decoding
+          // try to read a restart marker
+          markercode = is.read();
+          readcounter++;
+          if (markercode != 0xff)
+            throw new IOException("0x" + Integer.toHexString(markercode) + " found instead of restart marker prefix 0xff at 0x" + Integer.toHexString(readcounter) + " (" + getLocationName() + ")");
+
+          // Skip 0xff filling
+          do {
+            markercode = is.read();
+            readcounter++;
+          } while (markercode == 0xff);
+        }
+        if (markercode == ((M_RST0 & 255) + next_restart_num))
+          next_restart_num = (next_restart_num + 1) & 7;
+        else {
+          if (lastMcu)
+            // Forgive missing restart marker at the end.
+            // Pass it on as an unprocessed_marker to be
+            // processed by the main loop
+            unprocessed_marker = markercode;
+          else
+            throw new IOException("Restart markers are messed up at " + readcounter + "(0x" + Integer.toHexString(readcounter) + ") (" + getLocationName() + ")");
+        }
+        restarts_to_go = restart_interval;
+        for (int k = 0; k < last_dc.length; k++)
+          last_dc[k] = 0;
+        decoder.restart();
+      } else if (unprocessed_marker != 0)
+        throw new IOException("Unexpected Restart marker 0x" + Integer.toHexString(unprocessed_marker) + " with restart_interval=" + restart_interval + " and restarts_to_go=" + restarts_to_go + " at " + Integer.toHexString(readcounter) + " (" + getLocationName() + ")");
+    } catch (RestartException re) {
+      restarts_to_go = 0;
+      if (Log.debugLevel >= Log.LEVEL_INFO)
+        System.out.println("Restart exception ");
+    }
+    iReadVars.next_restart_num = next_restart_num;
+  }
+
   /**
    * Internal method to Read DCT coefficients
    */
@@ -3885,6 +4228,7 @@ public class LLJTran extends BasicJpegIo
   }
 
   private HuffEncoder encoder;
+  private int[][][] blockOrders; // see createBlockOrders(), set by initWriteDCT()
 
   // class variables partialXMCU and partialYMCU should be set to indicate
   // partial X & Y blocks without transpose
@@ -3920,13 +4264,16 @@ public class LLJTran extends BasicJpegIo
       handleYEdge = partialYMCU;
     }
 
-    if (widthMCU != dct_coefs[0].length || op == TRANSPOSE || op == ROT_90 || op == ROT_270 || op == TRANSVERSE)
+    // the width of the source rows (rows are not yet read if streaming)
+    int srcWidthMCU = rowStreamer != null ? rowStreamer.srcWidthMCU : dct_coefs[0].length;
+
+    if (widthMCU != srcWidthMCU || op == TRANSPOSE || op == ROT_90 || op == ROT_270 || op == TRANSVERSE)
       reuseDctRows = false;
 
     iWriteVars.handleXEdge = handleXEdge;
     iWriteVars.handleYEdge = handleYEdge;
 
-    iWriteVars.progressPerMcu = (0.99 / dct_coefs.length) / dct_coefs[0].length;
+    iWriteVars.progressPerMcu = (0.99 / dct_coefs.length) / srcWidthMCU;
     if (!transformDct && writeProgressCallback != null &&
       iWriteVars.currentProgress - iWriteVars.callbackProgress
         > writeProgressCallback.getCallbackInterval()) {
@@ -3940,21 +4287,27 @@ public class LLJTran extends BasicJpegIo
     // saving trouble for the garbage collector
     if (transformDct) {
       if (reuseDctRows) {
-        iWriteVars.new_dct_coefs = new int[heightMCU][][][][];
+        iWriteVars.new_dct_coefs = new int[heightMCU][][][];
         // Allocate space for new_dct_row
         if (heightMCU > 0)
-          iWriteVars.new_dct_coefs[0] = new int[widthMCU][][][];
+          iWriteVars.new_dct_coefs[0] = new int[widthMCU][][];
       } else
-        iWriteVars.new_dct_coefs = new int[heightMCU][widthMCU][][][];
+        iWriteVars.new_dct_coefs = new int[heightMCU][widthMCU][][];
 
       // Allocate space for first new_mcu
       if (heightMCU > 0 && widthMCU > 0)
-        iWriteVars.new_dct_coefs[0][0] = new int[mcusize][][];
+        iWriteVars.new_dct_coefs[0][0] = new int[mcusize][];
     } else {
       reuseDctRows = false;
       iWriteVars.last_dc = new int[components_in_scan];
-      encoder = new HuffEncoder(os);
+      encoder = new HuffEncoder(os, true);
     }
+    int mcuCount = widthMCU * heightMCU;
+    iWriteVars.parallelEncoding = !transformDct && parallelEncoding &&
+      restart_interval > 0 && restart_interval < mcuCount && _Ss == 0 &&
+      rowStreamer == null && !iWriteVars.pullDownMode &&
+      mcuCount >= MIN_PARALLEL_ENCODE_MCUS &&
+      Runtime.getRuntime().availableProcessors() >= 2;
 
     retainDct = !transformDct;
 
@@ -3967,6 +4320,8 @@ public class LLJTran extends BasicJpegIo
       yCropOffsetMCU = cropBounds.y / getMCUHeight();
     }
 
+    blockOrders = createBlockOrders();
+
     iWriteVars.reuseDctRows = reuseDctRows;
     iWriteVars.xCropOffsetMCU = xCropOffsetMCU;
     iWriteVars.yCropOffsetMCU = yCropOffsetMCU;
@@ -3974,18 +4329,138 @@ public class LLJTran extends BasicJpegIo
     iWriteVars.new_iy = 0;
   }
 
+  // Find the source MCU of the output MCU (new_ix, new_iy) for the
+  // transformation op: its position is returned in source (ix, iy), the
+  // transformation of its blocks is returned (NONE..ROT_270). This is not
+  // always op at the edges which are not a multiple of the MCU size
+  private int sourceMcu(int op, int new_ix, int new_iy, boolean handleXEdge,
+                        boolean handleYEdge, int xCropOffsetMCU,
+                        int yCropOffsetMCU, int[] source) {
+    int ix, iy;
+    int dctOp = op;
+    switch (op) {
+      case TRANSPOSE:
+        ix = new_iy;
+        iy = new_ix;
+        break;
+      case ROT_90:
+        ix = new_iy;
+        iy = widthMCU - 1 - new_ix;
+        if (handleYEdge) {
+          if (iy > 0)
+            iy--;
+          else {
+            iy = widthMCU - 1;
+            dctOp = TRANSPOSE;
+          }
+        }
+        break;
+      case ROT_270:
+        ix = heightMCU - 1 - new_iy;
+        iy = new_ix;
+        if (handleXEdge) {
+          if (ix > 0)
+            ix--;
+          else {
+            ix = heightMCU - 1;
+            dctOp = TRANSPOSE;
+          }
+        }
+        break;
+      case TRANSVERSE:
+        ix = heightMCU - 1 - new_iy;
+        iy = widthMCU - 1 - new_ix;
+        if (handleXEdge) {
+          if (ix > 0)
+            ix--;
+          else {
+            ix = heightMCU - 1;
+            dctOp = ROT_90;
+          }
+        }
+        if (handleYEdge) {
+          if (iy > 0)
+            iy--;
+          else {
+            iy = widthMCU - 1;
+            dctOp = dctOp == TRANSVERSE ? ROT_270 : TRANSPOSE;
+          }
+        }
+        break;
+      case FLIP_H:
+        ix = widthMCU - 1 - new_ix;
+        iy = new_iy;
+        if (handleXEdge) {
+          if (ix > 0)
+            ix--;
+          else {
+            ix = widthMCU - 1;
+            dctOp = NONE;
+          }
+        }
+        break;
+      case FLIP_V:
+        ix = new_ix;
+        iy = heightMCU - 1 - new_iy;
+        if (handleYEdge) {
+          if (iy > 0)
+            iy--;
+          else {
+            iy = heightMCU - 1;
+            dctOp = NONE;
+          }
+        }
+        break;
+      case ROT_180:
+        ix = widthMCU - 1 - new_ix;
+        iy = heightMCU - 1 - new_iy;
+        if (handleXEdge) {
+          if (ix > 0)
+            ix--;
+          else {
+            ix = widthMCU - 1;
+            dctOp = FLIP_V;
+          }
+        }
+        if (handleYEdge) {
+          if (iy > 0)
+            iy--;
+          else {
+            iy = heightMCU - 1;
+            dctOp = dctOp == ROT_180 ? FLIP_H : NONE;
+          }
+        }
+        break;
+      case CROP:
+        ix = new_ix + xCropOffsetMCU;
+        iy = new_iy + yCropOffsetMCU;
+        dctOp = NONE;
+        break;
+      case NONE:
+      default:
+        ix = new_ix;
+        iy = new_iy;
+        break;
+    }
+    source[0] = ix;
+    source[1] = iy;
+    return dctOp;
+  }
+
   // class variables partialXMCU and partialYMCU should be set to indicate
   // partial X & Y blocks without transpose
   private boolean writeNextDCT(int numBytes) throws IOException {
+    if (iWriteVars.parallelEncoding)
+      numBytes -= writeIntervalsParallel(numBytes); // continues sequentially if it has to give up
     boolean retVal = true;
     OutputStream os = iWriteVars.os;
     int op = iWriteVars.op;
     int options = iWriteVars.options;
     boolean transformDct = iWriteVars.transformDct;
 
-    int[][][][][] new_dct_coefs = iWriteVars.new_dct_coefs;
-    int[][][] new_mcu = null;
-    int[][][] next_mcu;
+    int[][][][] new_dct_coefs = iWriteVars.new_dct_coefs;
+    int[][] new_mcu = null;
+    int[][] next_mcu;
 
     int[] last_dc = iWriteVars.last_dc;
     int off;
@@ -4002,7 +4477,8 @@ public class LLJTran extends BasicJpegIo
     int new_off, ix, iy = 0;
     int new_ix = iWriteVars.new_ix;
     int new_iy = iWriteVars.new_iy;
-    int[][][][] new_dct_row = null;
+    int[][][] new_dct_row = null;
+    int[] source = new int[2];
     int markCounter = writecounter;
 
     int restart_interval = iWriteVars.restart_interval;
@@ -4029,212 +4505,25 @@ public class LLJTran extends BasicJpegIo
           break enough;
         off = 0;
         new_off = 0;
-        dctOp = op;
-        switch (op) {
-          case TRANSPOSE:
-            ix = new_iy;
-            iy = new_ix;
-            break;
-          case ROT_90:
-            ix = new_iy;
-            iy = widthMCU - 1 - new_ix;
-            if (handleYEdge) {
-              if (iy > 0)
-                iy--;
-              else {
-                iy = widthMCU - 1;
-                dctOp = TRANSPOSE;
-              }
-            }
-            break;
-          case ROT_270:
-            ix = heightMCU - 1 - new_iy;
-            iy = new_ix;
-            if (handleXEdge) {
-              if (ix > 0)
-                ix--;
-              else {
-                ix = heightMCU - 1;
-                dctOp = TRANSPOSE;
-              }
-            }
-            break;
-          case TRANSVERSE:
-            ix = heightMCU - 1 - new_iy;
-            iy = widthMCU - 1 - new_ix;
-            if (handleXEdge) {
-              if (ix > 0)
-                ix--;
-              else {
-                ix = heightMCU - 1;
-                dctOp = ROT_90;
-              }
-            }
-            if (handleYEdge) {
-              if (iy > 0)
-                iy--;
-              else {
-                iy = widthMCU - 1;
-                dctOp = dctOp == TRANSVERSE ? ROT_270 : TRANSPOSE;
-              }
-            }
-            break;
-          case FLIP_H:
-            ix = widthMCU - 1 - new_ix;
-            iy = new_iy;
-            if (handleXEdge) {
-              if (ix > 0)
-                ix--;
-              else {
-                ix = widthMCU - 1;
-                dctOp = NONE;
-              }
-            }
-            break;
-          case FLIP_V:
-            ix = new_ix;
-            iy = heightMCU - 1 - new_iy;
-            if (handleYEdge) {
-              if (iy > 0)
-                iy--;
-              else {
-                iy = heightMCU - 1;
-                dctOp = NONE;
-              }
-            }
-            break;
-          case ROT_180:
-            ix = widthMCU - 1 - new_ix;
-            iy = heightMCU - 1 - new_iy;
-            if (handleXEdge) {
-              if (ix > 0)
-                ix--;
-              else {
-                ix = widthMCU - 1;
-                dctOp = FLIP_V;
-              }
-            }
-            if (handleYEdge) {
-              if (iy > 0)
-                iy--;
-              else {
-                iy = heightMCU - 1;
-                dctOp = dctOp == ROT_180 ? FLIP_H : NONE;
-              }
-            }
-            break;
-          case CROP:
-            ix = new_ix + xCropOffsetMCU;
-            iy = new_iy + yCropOffsetMCU;
-            dctOp = NONE;
-            break;
-          case NONE:
-          default:
-            ix = new_ix;
-            iy = new_iy;
-            break;
-        }
+        dctOp = sourceMcu(op, new_ix, new_iy, handleXEdge, handleYEdge, xCropOffsetMCU, yCropOffsetMCU, source);
+        ix = source[0];
+        iy = source[1];
+        if (rowStreamer != null && dct_coefs[iy] == null)
+          rowStreamer.readRow(iy);
         next_mcu = dct_coefs[iy][ix];
 
         try {
           for (int c = 0; c < components_in_scan; c++) {
             if (!transformDct)
               encoder.setTables(ac_table[c], dc_table[c]);
-            switch (dctOp) {
-              case TRANSPOSE:
-                for (int mx = 0; mx < V[c]; mx++) {
-                  for (int my = 0; my < H[c]; my++) {
-                    int dct[][] = next_mcu[off + my * V[c] + mx];
-                    int new_dct[][] = transposeDCT(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case ROT_90:
-                for (int mx = 0; mx < V[c]; mx++) {
-                  for (int my = H[c] - 1; my >= 0; my--) {
-                    int dct[][] = next_mcu[off + my * V[c] + mx];
-                    int new_dct[][] = rotate90DCT(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case ROT_270:
-                for (int mx = V[c] - 1; mx >= 0; mx--) {
-                  for (int my = 0; my < H[c]; my++) {
-                    int dct[][] = next_mcu[off + my * V[c] + mx];
-                    int new_dct[][] = rotate270DCT(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case TRANSVERSE:
-                for (int mx = V[c] - 1; mx >= 0; mx--) {
-                  for (int my = H[c] - 1; my >= 0; my--) {
-                    int dct[][] = next_mcu[off + my * V[c] + mx];
-                    int new_dct[][] = transverseDCT(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case FLIP_H:
-                for (int my = 0; my < V[c]; my++) {
-                  for (int mx = H[c] - 1; mx >= 0; mx--) {
-                    int dct[][] = next_mcu[off + my * H[c] + mx];
-                    int new_dct[][] = flipHDct(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case FLIP_V:
-                for (int my = V[c] - 1; my >= 0; my--) {
-                  for (int mx = 0; mx < H[c]; mx++) {
-                    int dct[][] = next_mcu[off + my * H[c] + mx];
-                    int new_dct[][] = flipVDct(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case ROT_180:
-                for (int my = V[c] - 1; my >= 0; my--) {
-                  for (int mx = H[c] - 1; mx >= 0; mx--) {
-                    int dct[][] = next_mcu[off + my * H[c] + mx];
-                    int new_dct[][] = rotate180Dct(dct);
-                    if (transformDct)
-                      new_mcu[new_off++] = new_dct;
-                    else
-                      last_dc[c] = encoder.encode(new_dct, last_dc[c], dct[0].length);
-                  }
-                }
-                break;
-              case NONE:
-              default:
-                for (int b = 0; b < V[c] * H[c]; b++) {
-                  int dct[][] = next_mcu[off + b];
-                  if (transformDct)
-                    new_mcu[new_off++] = dct;
-                  else
-                    last_dc[c] = encoder.encode(dct, last_dc[c], dct[0].length);
-                }
-                break;
+            int order[] = blockOrders[dctOp][c];
+            for (int b = 0; b < order.length; b++) {
+              int dct[] = next_mcu[off + order[b]];
+              int new_dct[] = transformBlock(dctOp, dct);
+              if (transformDct)
+                new_mcu[new_off++] = new_dct;
+              else
+                last_dc[c] = encoder.encode(new_dct, last_dc[c], dct.length);
             }
             off += V[c] * H[c];
           }
@@ -4242,8 +4531,10 @@ public class LLJTran extends BasicJpegIo
           if (transformDct)
             new_mcu = next_mcu;
           else {
+            // no restart marker after the last MCU: there is no interval to restart
             if (restart_interval != 0 &&
-              --restarts_to_go == 0) {
+              --restarts_to_go == 0 &&
+              (new_iy < heightMCU - 1 || new_ix < widthMCU - 1)) {
               restarts_to_go = restart_interval;
               if (_Ss == 0) {
                 for (int k = 0; k < last_dc.length; k++)
@@ -4293,6 +4584,140 @@ public class LLJTran extends BasicJpegIo
     return retVal;
   }
 
+  /**
+   * Encodes the next restart intervals in parallel for writeNextDCT() if
+   * iWriteVars.parallelEncoding. Batches of intervals are encoded by
+   * parallel workers into separate buffers (each interval starts with DC
+   * values of 0, so they are independent) which are then written in their
+   * order with the restart markers in between, until at least numBytes are
+   * written or the image is complete. If an interval cannot be encoded,
+   * iWriteVars.parallelEncoding is reset and nothing of the current batch is
+   * written, so that writeNextDCT() continues sequentially at the start of
+   * the batch.
+   *
+   * @return the number of bytes written
+   */
+  private int writeIntervalsParallel(int numBytes) throws IOException {
+    OutputStream os = iWriteVars.os;
+    int restart_interval = iWriteVars.restart_interval;
+    int mcuCount = widthMCU * heightMCU;
+    int intervalCount = (mcuCount + restart_interval - 1) / restart_interval;
+    int batchSize = Runtime.getRuntime().availableProcessors() * 4;
+    int markCounter = writecounter;
+    // parallel encoding always stops at the start of an interval
+    int interval = (iWriteVars.new_iy * widthMCU + iWriteVars.new_ix) / restart_interval;
+
+    while (interval < intervalCount && writecounter - markCounter < numBytes) {
+      int firstInterval = interval;
+      int batchEnd = Math.min(interval + batchSize, intervalCount);
+      IntervalBuffer buffers[] = new IntervalBuffer[batchEnd - firstInterval];
+      IntStream.range(0, buffers.length).parallel().forEach(i ->
+        buffers[i] = encodeInterval(firstInterval + i));
+      for (IntervalBuffer buffer : buffers)
+        if (buffer == null) {
+          iWriteVars.parallelEncoding = false;
+          break;
+        }
+      if (!iWriteVars.parallelEncoding)
+        break;
+
+      for (; interval < batchEnd; interval++) {
+        IntervalBuffer buffer = buffers[interval - firstInterval];
+        buffer.writeTo(os);
+        writecounter += buffer.size();
+        if (interval < intervalCount - 1)
+          encoder.restart();
+      }
+
+      int nextMcu = Math.min(interval * restart_interval, mcuCount);
+      iWriteVars.currentProgress += iWriteVars.progressPerMcu *
+        (nextMcu - firstInterval * restart_interval);
+      if (writeProgressCallback != null &&
+        iWriteVars.currentProgress - iWriteVars.callbackProgress
+          > writeProgressCallback.getCallbackInterval()) {
+        iWriteVars.callbackProgress = iWriteVars.currentProgress;
+        writeProgressCallback.progressHandler(iWriteVars.callbackProgress,
+          (int) Math.round(iWriteVars.callbackProgress * 100));
+      }
+    }
+
+    int nextMcu = Math.min(interval * restart_interval, mcuCount);
+    iWriteVars.new_iy = nextMcu / widthMCU;
+    iWriteVars.new_ix = nextMcu % widthMCU;
+    return writecounter - markCounter;
+  }
+
+  /**
+   * Encodes one restart interval (see writeIntervalsParallel()) like
+   * writeNextDCT() does. Only reads the shared state of LLJTran, so that
+   * several intervals can be encoded at once.
+   *
+   * @return the entropy coded data of the interval without restart marker or
+   * null if a block is missing (see HuffEncoder.encode())
+   */
+  private IntervalBuffer encodeInterval(int interval) {
+    int restart_interval = iWriteVars.restart_interval;
+    int op = iWriteVars.op;
+    IntervalBuffer buffer = new IntervalBuffer((int) Math.min((long) restart_interval * mcusize * 16, 1 << 20));
+    HuffEncoder intervalEncoder = new HuffEncoder(buffer, false);
+    int last_dc[] = new int[components_in_scan];
+    int tmpCoef[] = new int[DCTSIZE2];
+    int tmpDct[] = new int[DCTSIZE2];
+    int source[] = new int[2];
+    int endMcu = Math.min((interval + 1) * restart_interval, widthMCU * heightMCU);
+
+    try {
+      for (int m = interval * restart_interval; m < endMcu; m++) {
+        int dctOp = sourceMcu(op, m % widthMCU, m / widthMCU, iWriteVars.handleXEdge,
+          iWriteVars.handleYEdge, iWriteVars.xCropOffsetMCU, iWriteVars.yCropOffsetMCU, source);
+        int mcu[][] = dct_coefs[source[1]][source[0]];
+        int off = 0;
+        for (int c = 0; c < components_in_scan; c++) {
+          intervalEncoder.setTables(ac_table[c], dc_table[c]);
+          int order[] = blockOrders[dctOp][c];
+          for (int b = 0; b < order.length; b++) {
+            int dct[] = mcu[off + order[b]];
+            int coef[] = transformBlock(dctOp, dct, tmpCoef, tmpDct);
+            last_dc[c] = intervalEncoder.encode(coef, last_dc[c], dct.length);
+          }
+          off += V[c] * H[c];
+        }
+      }
+      intervalEncoder.flush();
+    } catch (RestartException e) {
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // not thrown by IntervalBuffer
+    }
+    return buffer;
+  }
+
+  // Growing byte buffer for the entropy coded data of a restart interval
+  // (like ByteArrayOutputStream but without synchronization)
+  private static class IntervalBuffer extends OutputStream {
+    private byte buf[];
+    private int count;
+
+    IntervalBuffer(int initialSize) {
+      buf = new byte[Math.max(initialSize, 256)];
+    }
+
+    @Override
+    public void write(int b) {
+      if (count == buf.length)
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      buf[count++] = (byte) b;
+    }
+
+    int size() {
+      return count;
+    }
+
+    void writeTo(OutputStream os) throws IOException {
+      os.write(buf, 0, count);
+    }
+  }
+
   // class variables partialXMCU and partialYMCU should be set to indicate
   // partial X & Y blocks without transpose
   private void writeDCT(OutputStream os, int op, int options,
@@ -4302,21 +4727,46 @@ public class LLJTran extends BasicJpegIo
     do ; while (writeNextDCT(10000000));
   }
 
-  // Utility method to copy dct coeffictients for transforming methods
-  // to avoid changing the main array while gatheringStats or if not
-  // changing the original image
-  private static void copyDct(int srcDct[][], int destDct[][]) {
-    int i;
-    for (i = 0; i < srcDct.length; ++i)
-      System.arraycopy(srcDct[i], 0, destDct[i], 0, srcDct[i].length);
+  /**
+   * Pack a dct coefficient and its position into one int
+   *
+   * @param value    coefficient
+   * @param position position of the coefficient in zigzag order (0..63)
+   * @return packed coefficient: value in the upper 26 bits, position in the lower 6 bits
+   */
+  static int packCoef(int value, int position) {
+    return (value << 6) | position;
+  }
+
+  /**
+   * @param packedCoef see packCoef()
+   * @return value of the coefficient
+   */
+  static int coefValue(int packedCoef) {
+    return packedCoef >> 6;
+  }
+
+  /**
+   * @param packedCoef see packCoef()
+   * @return position of the coefficient in zigzag order (0..63)
+   */
+  static int coefPosition(int packedCoef) {
+    return packedCoef & 63;
   }
 
-  private static void compactDct(int tmpCoef[], int destDct[][]) {
+  private static int negateCoef(int packedCoef) {
+    return packCoef(-coefValue(packedCoef), coefPosition(packedCoef));
+  }
+
+  // Pack the coefficients in zigzag order (tmpCoef) into destDct: DC always,
+  // AC only if non zero. The number of coefficients is the same as in the
+  // source block because all transformations only reorder and negate.
+  private static void compactDct(int tmpCoef[], int destDct[]) {
     int i, k;
+    destDct[0] = packCoef(tmpCoef[0], 0);
     for (i = k = 1; i < tmpCoef.length; i++) {
       if (tmpCoef[i] != 0) {
-        destDct[1][k] = i;
-        destDct[0][k] = tmpCoef[i];
+        destDct[k] = packCoef(tmpCoef[i], i);
         k++;
       }
     }
@@ -4324,7 +4774,9 @@ public class LLJTran extends BasicJpegIo
 
   // In all the dct coefficient transformation routines if the class variable
   // retainDct is true then the new dct is written to tmp_dct, else the new
-  // dct is written to the passed dct array
+  // dct is written to the passed dct array. The static variants get the
+  // temporary coefficient array and the array for the new dct passed, so that
+  // they can be used by several threads (see StatsBand)
   //
 
   /**
@@ -4333,21 +4785,22 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] transposeDCT(int[][] dct) {
+  protected int[] transposeDCT(int[] dct) {
+    return transposeDCT(dct, tmp_coef, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] transposeDCT(int[] dct, int[] tmpCoef, int[] retVal) {
     int i, k;
-    // In all dct transform method tmp_dct is used as a temporary coeff
-    // array in addition to being used as a return value
-    // in case retainDct is true meaning the original dct should not be
-    // written to.
-    int tmpCoef[] = tmp_dct[0];
+    // In all dct transform method tmpCoef is used as a temporary coeff
+    // array and retVal as a return value (tmp_dct in case retainDct is true
+    // meaning the original dct should not be written to).
     for (i = 0; i < tmpCoef.length; ++i)
       tmpCoef[i] = 0;
-    for (i = 0; i < dct[0].length; i++) {
-      k = jpegnaturalorder[dct[1][i]];
+    for (i = 0; i < dct.length; i++) {
+      k = jpegnaturalorder[coefPosition(dct[i])];
       k = ((k & 7) << 3) + (k >> 3);
-      tmpCoef[jpegzigzagorder[k]] = dct[0][i];
+      tmpCoef[jpegzigzagorder[k]] = coefValue(dct[i]);
     }
-    int retVal[][] = retainDct ? tmp_dct : dct;
     compactDct(tmpCoef, retVal);
     return retVal;
   }
@@ -4358,17 +4811,19 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] rotate90DCT(int[][] dct) {
-    int i, k, m;
-    int tmpCoef[] = tmp_dct[0];
+  protected int[] rotate90DCT(int[] dct) {
+    return rotate90DCT(dct, tmp_coef, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] rotate90DCT(int[] dct, int[] tmpCoef, int[] retVal) {
+    int i, k;
     for (i = 0; i < tmpCoef.length; ++i)
       tmpCoef[i] = 0;
-    for (i = 0; i < dct[0].length; i++) {
-      k = jpegnaturalorder[dct[1][i]];
+    for (i = 0; i < dct.length; i++) {
+      k = jpegnaturalorder[coefPosition(dct[i])];
       k = ((k & 7) << 3) + (k >> 3);
-      tmpCoef[jpegzigzagorder[k]] = (k & 1) == 1 ? -dct[0][i] : dct[0][i];
+      tmpCoef[jpegzigzagorder[k]] = (k & 1) == 1 ? -coefValue(dct[i]) : coefValue(dct[i]);
     }
-    int retVal[][] = retainDct ? tmp_dct : dct;
     compactDct(tmpCoef, retVal);
     return retVal;
   }
@@ -4379,17 +4834,19 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] rotate270DCT(int[][] dct) {
+  protected int[] rotate270DCT(int[] dct) {
+    return rotate270DCT(dct, tmp_coef, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] rotate270DCT(int[] dct, int[] tmpCoef, int[] retVal) {
     int i, k;
-    int tmpCoef[] = tmp_dct[0];
     for (i = 0; i < tmpCoef.length; ++i)
       tmpCoef[i] = 0;
-    for (i = 0; i < dct[0].length; i++) {
-      k = jpegnaturalorder[dct[1][i]];
+    for (i = 0; i < dct.length; i++) {
+      k = jpegnaturalorder[coefPosition(dct[i])];
       k = ((k & 7) << 3) + (k >> 3);
-      tmpCoef[jpegzigzagorder[k]] = (k & 8) == 8 ? -dct[0][i] : dct[0][i];
+      tmpCoef[jpegzigzagorder[k]] = (k & 8) == 8 ? -coefValue(dct[i]) : coefValue(dct[i]);
     }
-    int retVal[][] = retainDct ? tmp_dct : dct;
     compactDct(tmpCoef, retVal);
     return retVal;
   }
@@ -4400,20 +4857,22 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] transverseDCT(int[][] dct) {
+  protected int[] transverseDCT(int[] dct) {
+    return transverseDCT(dct, tmp_coef, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] transverseDCT(int[] dct, int[] tmpCoef, int[] retVal) {
     int i, k;
-    int tmpCoef[] = tmp_dct[0];
     for (i = 0; i < tmpCoef.length; ++i)
       tmpCoef[i] = 0;
     boolean neg;
-    for (i = 0; i < dct[0].length; i++) {
-      k = jpegnaturalorder[dct[1][i]];
+    for (i = 0; i < dct.length; i++) {
+      k = jpegnaturalorder[coefPosition(dct[i])];
       neg = (k & 1) != 0;
       k = ((k & 7) << 3) + (k >> 3);
       neg ^= (k & 1) != 0;
-      tmpCoef[jpegzigzagorder[k]] = neg ? -dct[0][i] : dct[0][i];
+      tmpCoef[jpegzigzagorder[k]] = neg ? -coefValue(dct[i]) : coefValue(dct[i]);
     }
-    int retVal[][] = retainDct ? tmp_dct : dct;
     compactDct(tmpCoef, retVal);
     return retVal;
   }
@@ -4424,16 +4883,17 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] flipHDct(int[][] dct) {
-    int retVal[][] = dct;
-    int len = dct[0].length;
-    if (retainDct) {
-      copyDct(dct, tmp_dct);
-      retVal = tmp_dct;
-    }
+  protected int[] flipHDct(int[] dct) {
+    return flipHDct(dct, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] flipHDct(int[] dct, int[] retVal) {
+    int len = dct.length;
+    if (retVal != dct)
+      System.arraycopy(dct, 0, retVal, 0, len);
     for (int k = 0; k < len; k++) {
-      if ((jpegnaturalorder[retVal[1][k]] & 1) != 0)
-        retVal[0][k] = -retVal[0][k];
+      if ((jpegnaturalorder[coefPosition(retVal[k])] & 1) != 0)
+        retVal[k] = negateCoef(retVal[k]);
     }
     return retVal;
   }
@@ -4444,16 +4904,17 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] flipVDct(int[][] dct) {
-    int retVal[][] = dct;
-    int len = dct[0].length;
-    if (retainDct) {
-      copyDct(dct, tmp_dct);
-      retVal = tmp_dct;
-    }
+  protected int[] flipVDct(int[] dct) {
+    return flipVDct(dct, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] flipVDct(int[] dct, int[] retVal) {
+    int len = dct.length;
+    if (retVal != dct)
+      System.arraycopy(dct, 0, retVal, 0, len);
     for (int k = 0; k < len; k++) {
-      if ((jpegnaturalorder[retVal[1][k]] & 8) == 8)
-        retVal[0][k] = -retVal[0][k];
+      if ((jpegnaturalorder[coefPosition(retVal[k])] & 8) == 8)
+        retVal[k] = negateCoef(retVal[k]);
     }
     return retVal;
   }
@@ -4464,23 +4925,130 @@ public class LLJTran extends BasicJpegIo
    * @param dct Dct Coefficient array
    * @see #retainDct
    */
-  protected int[][] rotate180Dct(int[][] dct) {
-    int retVal[][] = dct;
-    int len = dct[0].length;
-    if (retainDct) {
-      copyDct(dct, tmp_dct);
-      retVal = tmp_dct;
-    }
+  protected int[] rotate180Dct(int[] dct) {
+    return rotate180Dct(dct, retainDct ? tmp_dct : dct);
+  }
+
+  private static int[] rotate180Dct(int[] dct, int[] retVal) {
+    int len = dct.length;
+    if (retVal != dct)
+      System.arraycopy(dct, 0, retVal, 0, len);
     for (int k = 0; k < len; k++) {
       // For even row, negate every odd column.
       // For odd row, negate every even column.
-      if (((jpegnaturalorder[retVal[1][k]] & 9) == 1) ||
-        ((jpegnaturalorder[retVal[1][k]] & 9) == 8))
-        retVal[0][k] = -retVal[0][k];
+      int natural = jpegnaturalorder[coefPosition(retVal[k])];
+      if (((natural & 9) == 1) || ((natural & 9) == 8))
+        retVal[k] = negateCoef(retVal[k]);
     }
     return retVal;
   }
 
+  // Transform a dct array by dctOp (NONE..ROT_270) using the methods above
+  private int[] transformBlock(int dctOp, int[] dct) {
+    switch (dctOp) {
+      case TRANSPOSE:
+        return transposeDCT(dct);
+      case ROT_90:
+        return rotate90DCT(dct);
+      case ROT_270:
+        return rotate270DCT(dct);
+      case TRANSVERSE:
+        return transverseDCT(dct);
+      case FLIP_H:
+        return flipHDct(dct);
+      case FLIP_V:
+        return flipVDct(dct);
+      case ROT_180:
+        return rotate180Dct(dct);
+      case NONE:
+      default:
+        return dct;
+    }
+  }
+
+  // Thread safe variant of transformBlock(): the original dct is never
+  // written to, the new dct is returned in retVal (or dct itself for NONE)
+  private static int[] transformBlock(int dctOp, int[] dct, int[] tmpCoef, int[] retVal) {
+    switch (dctOp) {
+      case TRANSPOSE:
+        return transposeDCT(dct, tmpCoef, retVal);
+      case ROT_90:
+        return rotate90DCT(dct, tmpCoef, retVal);
+      case ROT_270:
+        return rotate270DCT(dct, tmpCoef, retVal);
+      case TRANSVERSE:
+        return transverseDCT(dct, tmpCoef, retVal);
+      case FLIP_H:
+        return flipHDct(dct, retVal);
+      case FLIP_V:
+        return flipVDct(dct, retVal);
+      case ROT_180:
+        return rotate180Dct(dct, retVal);
+      case NONE:
+      default:
+        return dct;
+    }
+  }
+
+  // The order in which the blocks of a source MCU are written for every
+  // dctOp (NONE..ROT_270): blockOrders[dctOp][c][k] is the index of the k-th
+  // block of component c relative to the first block of c in the MCU.
+  // H and V are those of the image written (i.e. already transposed for
+  // TRANSPOSE, ROT_90, ROT_270 and TRANSVERSE)
+  private int[][][] createBlockOrders() {
+    int[][][] blockOrders = new int[ROT_270 + 1][components_in_scan][];
+    for (int dctOp = NONE; dctOp <= ROT_270; dctOp++) {
+      for (int c = 0; c < components_in_scan; c++) {
+        int[] order = new int[V[c] * H[c]];
+        int k = 0;
+        switch (dctOp) {
+          case TRANSPOSE:
+            for (int mx = 0; mx < V[c]; mx++)
+              for (int my = 0; my < H[c]; my++)
+                order[k++] = my * V[c] + mx;
+            break;
+          case ROT_90:
+            for (int mx = 0; mx < V[c]; mx++)
+              for (int my = H[c] - 1; my >= 0; my--)
+                order[k++] = my * V[c] + mx;
+            break;
+          case ROT_270:
+            for (int mx = V[c] - 1; mx >= 0; mx--)
+              for (int my = 0; my < H[c]; my++)
+                order[k++] = my * V[c] + mx;
+            break;
+          case TRANSVERSE:
+            for (int mx = V[c] - 1; mx >= 0; mx--)
+              for (int my = H[c] - 1; my >= 0; my--)
+                order[k++] = my * V[c] + mx;
+            break;
+          case FLIP_H:
+            for (int my = 0; my < V[c]; my++)
+              for (int mx = H[c] - 1; mx >= 0; mx--)
+                order[k++] = my * H[c] + mx;
+            break;
+          case FLIP_V:
+            for (int my = V[c] - 1; my >= 0; my--)
+              for (int mx = 0; mx < H[c]; mx++)
+                order[k++] = my * H[c] + mx;
+            break;
+          case ROT_180:
+            for (int my = V[c] - 1; my >= 0; my--)
+              for (int mx = H[c] - 1; mx >= 0; mx--)
+                order[k++] = my * H[c] + mx;
+            break;
+          case NONE:
+          default:
+            for (int b = 0; b < order.length; b++)
+              order[k++] = b;
+            break;
+        }
+        blockOrders[dctOp][c] = order;
+      }
+    }
+    return blockOrders;
+  }
+
   /**
    * Method used for debugging Iterative Read/Writes.
    *
@@ -4516,8 +5084,90 @@ public class LLJTran extends BasicJpegIo
   // trimRightEdge
   // trimBottomEdge
 
+  /**
+   * Reads the rows of dct_coefs on demand while writing (see
+   * transformStreaming). Rows are read in order, or in any order if
+   * randomAccess is true: then the image data is decoded once in the
+   * constructor to remember the decoder's state at the start of every row.
+   * A row is then decoded again by seeking to its start in the file.
+   */
+  private class RowStreamer {
+    final int srcWidthMCU = widthMCU;
+    final int srcHeightMCU = heightMCU;
+    private int nextRow = 0;
+
+    // decoder state at the start of every row if randomAccess
+    private long[] rowOffset;
+    private int[] rowBitBuff, rowBitBuffLen, rowRestartsToGo, rowNextRestartNum;
+    private int[][] rowLastDc;
+    private FileChannel channel;
+
+    RowStreamer(boolean randomAccess) throws IOException {
+      if (randomAccess) {
+        rowOffset = new long[srcHeightMCU];
+        rowBitBuff = new int[srcHeightMCU];
+        rowBitBuffLen = new int[srcHeightMCU];
+        rowRestartsToGo = new int[srcHeightMCU];
+        rowNextRestartNum = new int[srcHeightMCU];
+        rowLastDc = new int[srcHeightMCU][];
+        int[][][] scratchRow = new int[srcWidthMCU][mcusize][];
+        for (int iy = 0; iy < srcHeightMCU; iy++) {
+          if (unprocessed_marker != 0)
+            throw new IOException("Unexpected marker 0x" + Integer.toHexString(unprocessed_marker) + " at the start of MCU row " + iy + " (" + getLocationName() + ")");
+          rowOffset[iy] = readcounter;
+          rowBitBuff[iy] = decoder.bit_buff;
+          rowBitBuffLen[iy] = decoder.bit_buff_len;
+          rowRestartsToGo[iy] = restarts_to_go;
+          rowNextRestartNum[iy] = iReadVars.next_restart_num;
+          rowLastDc[iy] = iReadVars.last_dc.clone();
+          decodeRow(iy, scratchRow);
+        }
+        closeInternalInputStream();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      }
+    }
+
+    void readRow(int iy) throws IOException {
+      if (channel != null) {
+        // restore the decoder's state at the start of the row
+        InputStream is = new ChannelInputStream(channel, rowOffset[iy], false);
+        iReadVars.is = is;
+        decoder.setInput(is);
+        readcounter = (int) rowOffset[iy];
+        decoder.bit_buff = rowBitBuff[iy];
+        decoder.bit_buff_len = rowBitBuffLen[iy];
+        restarts_to_go = rowRestartsToGo[iy];
+        iReadVars.next_restart_num = rowNextRestartNum[iy];
+        System.arraycopy(rowLastDc[iy], 0, iReadVars.last_dc, 0, rowLastDc[iy].length);
+        unprocessed_marker = 0;
+      } else if (iy != nextRow)
+        throw new IOException("MCU row " + iy + " requested while reading row " + nextRow + " (" + getLocationName() + ")");
+      dct_coefs[iy] = new int[srcWidthMCU][mcusize][];
+      decodeRow(iy, dct_coefs[iy]);
+      nextRow = iy + 1;
+    }
+
+    private void decodeRow(int iy, int[][][] row) throws IOException {
+      for (int ix = 0; ix < srcWidthMCU; ix++)
+        readMCU(row[ix], iy == srcHeightMCU - 1 && ix == srcWidthMCU - 1);
+    }
+
+    void close() {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException ioe) {
+          // can't do much
+        }
+        channel = null;
+      }
+    }
+  }
+
   private class HuffDecoder {
     private InputStream is;
+    // is if it is a ChannelInputStream (i.e. a file): its read() is inlined
+    private ChannelInputStream channelIs;
     int bit_buff;
     int bit_buff_len;
     int marker;
@@ -4525,28 +5175,40 @@ public class LLJTran extends BasicJpegIo
     int next_restart_num;
     int[] cur_maxcode, cur_huffval, cur_valoffset;
 
+    // Decoding tables of the scan. They are kept here since writing
+    // (generateHuffTables) replaces the tables of LLJTran, which matters
+    // when reading and writing are interleaved (transformStreaming)
+    private final int[] dec_dc_ix = dc_ix, dec_ac_ix = ac_ix;
+    private final int[][] dec_dc_maxcode = dc_maxcode, dec_dc_huffval = dc_huffval, dec_dc_valoffset = dc_valoffset;
+    private final int[][] dec_ac_maxcode = ac_maxcode, dec_ac_huffval = ac_huffval, dec_ac_valoffset = ac_valoffset;
+
     HuffDecoder(InputStream is) {
+      setInput(is);
+    }
+
+    void setInput(InputStream is) {
       this.is = is;
+      channelIs = is instanceof ChannelInputStream ? (ChannelInputStream) is : null;
     }
 
     void setTables(boolean ac, int index) {
       if (ac) {
         // find index of table
-        for (int i = 0; i < ac_ix.length; i++) {
-          if (ac_ix[i] == index) { // found
-            cur_maxcode = ac_maxcode[i];
-            cur_huffval = ac_huffval[i];
-            cur_valoffset = ac_valoffset[i];
+        for (int i = 0; i < dec_ac_ix.length; i++) {
+          if (dec_ac_ix[i] == index) { // found
+            cur_maxcode = dec_ac_maxcode[i];
+            cur_huffval = dec_ac_huffval[i];
+            cur_valoffset = dec_ac_valoffset[i];
             break;
           }
         }
       } else {
         // find index of table
-        for (int i = 0; i < dc_ix.length; i++) {
-          if (dc_ix[i] == index) { // found
-            cur_maxcode = dc_maxcode[i];
-            cur_huffval = dc_huffval[i];
-            cur_valoffset = dc_valoffset[i];
+        for (int i = 0; i < dec_dc_ix.length; i++) {
+          if (dec_dc_ix[i] == index) { // found
+            cur_maxcode = dec_dc_maxcode[i];
+            cur_huffval = dec_dc_huffval[i];
+            cur_valoffset = dec_dc_valoffset[i];
             break;
           }
         }
@@ -4562,7 +5224,7 @@ public class LLJTran extends BasicJpegIo
           nextbyte = read();
           // Forget it if we have hit an unprocessed_marker which
           // should be a restart marker
-          if (unprocessed_marker != 0)
+          if (markerHit())
             break;
 
           // Fill bit_buff till we have atleast len bits
@@ -4574,12 +5236,17 @@ public class LLJTran extends BasicJpegIo
       }
     }
 
+    // true if a marker has been hit while decoding
+    boolean markerHit() {
+      return unprocessed_marker != 0;
+    }
+
     int read() throws IOException, RestartException {
       int result = -1;
 
       // Read a byte only if we have not hit a marker while decoding
       if (unprocessed_marker == 0) {
-        result = is.read();
+        result = channelIs != null ? channelIs.read() : is.read();
         readcounter++;
 
         // Special Cases
@@ -4588,7 +5255,7 @@ public class LLJTran extends BasicJpegIo
         if (result == 0xff) {
           // Skip 0xff filling
           do {
-            result = is.read();
+            result = channelIs != null ? channelIs.read() : is.read();
             readcounter++;
           } while (result == 0xff);
 
@@ -4664,34 +5331,214 @@ public class LLJTran extends BasicJpegIo
     }
   }
 
+  // Decoder for one restart interval of a scan which has been read into
+  // memory (see readDCTParallel). The interval ends before the restart
+  // marker: reaching its end is handled like hitting the marker by the
+  // sequential decoder. It does not change the reading state of LLJTran,
+  // so that several intervals can be decoded at once
+  private class SegmentDecoder extends HuffDecoder {
+    private final byte[] scan;
+    private int pos;
+    private final int end;
+    private boolean endReached;
+
+    SegmentDecoder(byte[] scan, int start, int end) {
+      super(null);
+      this.scan = scan;
+      this.pos = start;
+      this.end = end;
+    }
+
+    @Override
+    boolean markerHit() {
+      return endReached;
+    }
+
+    @Override
+    int read() {
+      if (pos >= end) {
+        endReached = true;
+        return -1;
+      }
+      int result = scan[pos++] & 255;
+      if (result == 0xff) {
+        // Skip 0xff filling and the 0 following it: 0xff followed by 0
+        // means 0xff (the interval contains no markers)
+        while (pos < end && (scan[pos++] & 255) == 0xff) ;
+      }
+      return result;
+    }
+  }
+
+  // Dry run of writeDCT() counting the DC/AC symbols to be encoded into
+  // huffGen for optimized Huffman tables. The MCU rows to be written are
+  // split into bands which are counted in parallel (see StatsBand) and then
+  // merged in their order. iWriteVars is not touched.
+  private void gatherHuffStats(int op, int options, int restart_interval) {
+    boolean edgeOption = ((options & OPT_XFORM_ADJUST_EDGES) != 0);
+    boolean handleXEdge = edgeOption && partialXMCU;
+    boolean handleYEdge = edgeOption && partialYMCU;
+    int xCropOffsetMCU = op == CROP ? cropBounds.x / getMCUWidth() : 0;
+    int yCropOffsetMCU = op == CROP ? cropBounds.y / getMCUHeight() : 0;
+    blockOrders = createBlockOrders();
+
+    // table indices (in dc_ix, ac_ix) of the components
+    int dcTableIndex[] = new int[components_in_scan];
+    int acTableIndex[] = new int[components_in_scan];
+    for (int c = 0; c < components_in_scan; c++) {
+      for (int i = 0; i < dc_ix.length; i++)
+        if (dc_ix[i] == dc_table[c])
+          dcTableIndex[c] = i;
+      for (int i = 0; i < ac_ix.length; i++)
+        if (ac_ix[i] == ac_table[c])
+          acTableIndex[c] = i;
+    }
+
+    int bandCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), heightMCU / MIN_STATS_BAND_ROWS));
+    StatsBand bands[] = new StatsBand[bandCount];
+    for (int i = 0; i < bandCount; i++)
+      bands[i] = new StatsBand(op, heightMCU * i / bandCount, heightMCU * (i + 1) / bandCount,
+        handleXEdge, handleYEdge, xCropOffsetMCU, yCropOffsetMCU, restart_interval, dcTableIndex, acTableIndex);
+    if (bandCount > 1)
+      Arrays.stream(bands).parallel().forEach(StatsBand::count);
+    else
+      bands[0].count();
+
+    int last_dc[] = new int[components_in_scan];
+    for (StatsBand band : bands)
+      huffGen.add(band, last_dc);
+  }
+
+  // Number of bits of the magnitude of value (JPEG: SSSS), 0 for 0
+  private static int magnitudeCategory(int value) {
+    return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+  }
+
+  // Symbol counts of the MCU rows fromRow..toRow-1 (to be written) for
+  // gatherHuffStats(), exactly as HuffEncoder.encode() would write them.
+  // The band starts with a DC value of 0 for all components, which
+  // HuffGenerator.add() corrects using the previous band. Only reads the
+  // shared state of LLJTran, so that several bands can be counted at once
+  private class StatsBand {
+    private final int op, fromRow, toRow;
+    private final boolean handleXEdge, handleYEdge;
+    private final int xCropOffsetMCU, yCropOffsetMCU;
+    private final int restart_interval;
+    private final int dcTableIndex[], acTableIndex[];
+    // the DC differences are reset at the start of the band anyway
+    private final boolean restartAtStart;
+
+    private final int dc_count[][] = new int[dc_ix.length][257];
+    private final int ac_count[][] = new int[ac_ix.length][257];
+    // DC value of the first and the last block of every component
+    private final int first_dc[] = new int[components_in_scan];
+    private final int last_dc[] = new int[components_in_scan];
+
+    StatsBand(int op, int fromRow, int toRow, boolean handleXEdge,
+              boolean handleYEdge, int xCropOffsetMCU, int yCropOffsetMCU,
+              int restart_interval, int dcTableIndex[], int acTableIndex[]) {
+      this.op = op;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.handleXEdge = handleXEdge;
+      this.handleYEdge = handleYEdge;
+      this.xCropOffsetMCU = xCropOffsetMCU;
+      this.yCropOffsetMCU = yCropOffsetMCU;
+      this.restart_interval = restart_interval;
+      this.dcTableIndex = dcTableIndex;
+      this.acTableIndex = acTableIndex;
+      restartAtStart = restart_interval != 0 && _Ss == 0 &&
+        (fromRow * widthMCU) % restart_interval == 0;
+    }
+
+    boolean isEmpty() {
+      return fromRow >= toRow || widthMCU == 0;
+    }
+
+    void count() {
+      int tmpCoef[] = new int[DCTSIZE2];
+      int tmpDct[] = new int[DCTSIZE2];
+      int source[] = new int[2];
+      int restarts_to_go = restart_interval == 0 ? 0 :
+        restart_interval - (fromRow * widthMCU) % restart_interval;
+
+      for (int new_iy = fromRow; new_iy < toRow; new_iy++) {
+        for (int new_ix = 0; new_ix < widthMCU; new_ix++) {
+          int dctOp = sourceMcu(op, new_ix, new_iy, handleXEdge, handleYEdge,
+            xCropOffsetMCU, yCropOffsetMCU, source);
+          int mcu[][] = dct_coefs[source[1]][source[0]];
+          int off = 0;
+          for (int c = 0; c < components_in_scan; c++) {
+            int dcCount[] = dc_count[dcTableIndex[c]];
+            int acCount[] = ac_count[acTableIndex[c]];
+            int order[] = blockOrders[dctOp][c];
+            for (int b = 0; b < order.length; b++) {
+              int dct[] = mcu[off + order[b]];
+              int coef[] = transformBlock(dctOp, dct, tmpCoef, tmpDct);
+              int dc = coefValue(coef[0]);
+              if (new_iy == fromRow && new_ix == 0 && b == 0)
+                first_dc[c] = dc;
+              dcCount[magnitudeCategory(dc - last_dc[c])]++;
+              last_dc[c] = dc;
+              countAC(coef, dct.length, acCount);
+            }
+            off += V[c] * H[c];
+          }
+
+          if (restart_interval != 0 && --restarts_to_go == 0) {
+            restarts_to_go = restart_interval;
+            if (_Ss == 0) {
+              for (int k = 0; k < last_dc.length; k++)
+                last_dc[k] = 0;
+            }
+          }
+        }
+      }
+    }
+
+    // see HuffEncoder.encode()
+    private void countAC(int coef[], int len, int acCount[]) {
+      int r;
+      for (int k = 1; k < len; k++) {
+        r = coefPosition(coef[k]) - coefPosition(coef[k - 1]) - 1;
+        while (r > 15) { // 0xF0 for a gap > 15
+          acCount[0xF0]++;
+          r -= 16;
+        }
+        acCount[(r << 4) + magnitudeCategory(coefValue(coef[k]))]++;
+      }
+      if ((63 - coefPosition(coef[len - 1])) > 0) // end of block
+        acCount[0]++;
+    }
+  }
+
   private class HuffEncoder {
     private int bufferputbits;
     private int bufferputbuffer;
     private OutputStream outputstream;
+    // false for the encoders of parallel restart intervals: writecounter is
+    // updated when their output is written (see writeIntervalsParallel())
+    private final boolean countWritten;
     private int[][] dc_ecodetable, ac_ecodetable;
     int next_restart_num;
-    int acTblIndex, dcTblIndex;
 
-    public HuffEncoder(OutputStream os) {
+    public HuffEncoder(OutputStream os, boolean countWritten) {
       outputstream = os;
+      this.countWritten = countWritten;
     }
 
     void setTables(int iac, int idc) {
       boolean dt_found = false, at_found = false;
       for (int i = 0; i < ac_ix.length; i++) {
         if (ac_ix[i] == iac) { // found
-          if (!gatheringStats)
-            ac_ecodetable = enc_ac_matrix[i];
-          this.acTblIndex = i;
+          ac_ecodetable = enc_ac_matrix[i];
           at_found = true;
           break;
         }
       }
       for (int i = 0; i < dc_ix.length; i++) {
         if (dc_ix[i] == idc) { // found
-          if (!gatheringStats)
-            dc_ecodetable = enc_dc_matrix[i];
-          this.dcTblIndex = i;
+          dc_ecodetable = enc_dc_matrix[i];
           dt_found = true;
           break;
         }
@@ -4702,13 +5549,14 @@ public class LLJTran extends BasicJpegIo
     }
 
     // The length is required to be passed since it may not be
-    // coeff[0].length if the dct is tmp_dct.
-    int encode(int coef[][], int last_dc, int len) throws IOException, RestartException {
-      if (coef == null || coef[0] == null)
+    // coeff.length if the dct is tmp_dct.
+    int encode(int coef[], int last_dc, int len) throws IOException, RestartException {
+      if (coef == null)
         throw new RestartException(0);
       int temp, temp2, nbits, k, r, i;
       // The DC portion
-      temp = temp2 = coef[0][0] - last_dc;
+      int dc = coefValue(coef[0]);
+      temp = temp2 = dc - last_dc;
       if (temp < 0) {
         temp = -temp;
         temp2--;
@@ -4718,25 +5566,19 @@ public class LLJTran extends BasicJpegIo
         nbits++;
         temp >>= 1;
       }
-      if (gatheringStats)
-        huffGen.updateDCCount(dcTblIndex, nbits);
-      else
-        writeCode(dc_ecodetable[nbits][0], dc_ecodetable[nbits][1]);
+      writeCode(dc_ecodetable[nbits][0], dc_ecodetable[nbits][1]);
       // The arguments in bufferIt are code and size.
       if (nbits != 0)
         writeCode(temp2, nbits);
 
       // The AC portion
       for (k = 1; k < len; k++) {
-        r = coef[1][k] - coef[1][k - 1] - 1;
+        r = coefPosition(coef[k]) - coefPosition(coef[k - 1]) - 1;
         while (r > 15) { // write for 0 ig gap > 15
-          if (gatheringStats)
-            huffGen.updateACCount(acTblIndex, 0xF0);
-          else
-            writeCode(ac_ecodetable[0xF0][0], ac_ecodetable[0xF0][1]);
+          writeCode(ac_ecodetable[0xF0][0], ac_ecodetable[0xF0][1]);
           r -= 16;
         }
-        temp = temp2 = coef[0][k];
+        temp = temp2 = coefValue(coef[k]);
         if (temp < 0) {
           temp = -temp;
           temp2--;
@@ -4745,30 +5587,23 @@ public class LLJTran extends BasicJpegIo
         while ((temp >>= 1) != 0)
           nbits++;
         i = (r << 4) + nbits;
-        if (gatheringStats)
-          huffGen.updateACCount(acTblIndex, i);
-        else
-          writeCode(ac_ecodetable[i][0], ac_ecodetable[i][1]);
+        writeCode(ac_ecodetable[i][0], ac_ecodetable[i][1]);
         writeCode(temp2, nbits);
       }
 
-      if ((63 - coef[1][len - 1]) > 0) {  // mark that the end of data
-        if (gatheringStats)
-          huffGen.updateACCount(acTblIndex, 0);
-        else
-          writeCode(ac_ecodetable[0][0], ac_ecodetable[0][1]);
+      if ((63 - coefPosition(coef[len - 1])) > 0) {  // mark that the end of data
+        writeCode(ac_ecodetable[0][0], ac_ecodetable[0][1]);
       }
 
-      return coef[0][0];
+      return dc;
     }
 
     void restart() throws IOException {
-      if (gatheringStats)
-        return;
       flush();
       outputstream.write(M_PRX);
       outputstream.write((M_RST0 & 255) + next_restart_num);
-      writecounter += 2;
+      if (countWritten)
+        writecounter += 2;
       next_restart_num = (next_restart_num + 1) & 7;
       bufferputbits = bufferputbuffer = 0;
     }
@@ -4777,8 +5612,6 @@ public class LLJTran extends BasicJpegIo
     // and sends them to out stream by the byte.
 
     void writeCode(int code, int size) throws IOException {
-      if (gatheringStats)
-        return;
       if (size == 0)
         throw new RuntimeException("Runtime Error: Missing Huffman Table Entry");
       int putbuffer = code;
@@ -4791,10 +5624,12 @@ public class LLJTran extends BasicJpegIo
       while (putbits >= 8) {
         c = ((putbuffer >> 16) & 0xff);
         outputstream.write(c);
-        writecounter++;
+        if (countWritten)
+          writecounter++;
         if (c == 0xff) {
           outputstream.write(0);
-          writecounter++;
+          if (countWritten)
+            writecounter++;
         }
         putbuffer <<= 8;
         putbits -= 8;
@@ -4804,18 +5639,18 @@ public class LLJTran extends BasicJpegIo
     }
 
     void flush() throws IOException {
-      if (gatheringStats)
-        return;
       int putbuffer = bufferputbuffer;
       int putbits = bufferputbits;
       int c;
       while (putbits >= 8) {
         c = (putbuffer >> 16) & 0xff;
         outputstream.write(c);
-        writecounter++;
+        if (countWritten)
+          writecounter++;
         if (c == 0xFF) {
           outputstream.write(0);
-          writecounter++;
+          if (countWritten)
+            writecounter++;
         }
         putbuffer <<= 8;
         putbits -= 8;
@@ -4823,7 +5658,8 @@ public class LLJTran extends BasicJpegIo
       if (putbits > 0) {
         c = (putbuffer >> 16) & (0xff00 >> putbits) & 0xff;
         outputstream.write(c);
-        writecounter++;
+        if (countWritten)
+          writecounter++;
       }
       bufferputbuffer = putbuffer;
       bufferputbits = putbits;
@@ -4851,12 +5687,29 @@ public class LLJTran extends BasicJpegIo
     public HuffGenerator() {
     }
 
-    public void updateDCCount(int tableIndex, int symbol) {
-      ++dc_count[tableIndex][symbol];
-    }
-
-    public void updateACCount(int tableIndex, int symbol) {
-      ++ac_count[tableIndex][symbol];
+    /* Adds the symbol counts of a band (see StatsBand). The bands must be
+     * added in their order: last_dc holds the last DC value of every
+     * component before the band and is updated to the last DC value of the
+     * band, so that the DC difference of the first block of the band can be
+     * corrected (the band has counted it as a difference to 0) */
+    public void add(StatsBand band, int last_dc[]) {
+      for (int t = 0; t < dc_count.length; t++)
+        for (int i = 0; i < 257; i++)
+          dc_count[t][i] += band.dc_count[t][i];
+      for (int t = 0; t < ac_count.length; t++)
+        for (int i = 0; i < 257; i++)
+          ac_count[t][i] += band.ac_count[t][i];
+
+      if (band.isEmpty())
+        return;
+      for (int c = 0; c < last_dc.length; c++) {
+        if (!band.restartAtStart) {
+          int count[] = dc_count[band.dcTableIndex[c]];
+          count[magnitudeCategory(band.first_dc[c])]--;
+          count[magnitudeCategory(band.first_dc[c] - last_dc[c])]++;
+        }
+        last_dc[c] = band.last_dc[c];
+      }
     }
 
     /* Code is modified from jpeg_gen_optimal_table function in jchuff.c
@@ -4992,12 +5845,17 @@ public class LLJTran extends BasicJpegIo
     }
 
     /* Writes out the Huffman Tables to os as per JPEG spec excluding
-     * marker and length */
+     * marker and length. Tables without any symbol are not used by the
+     * scan (e.g. the chroma tables of a grayscale image that has been
+     * saved with all standard tables) and are left out: there is no
+     * optimal table for them */
     private void writeHuffTables(OutputStream os) throws IOException {
       int tableIndex, htInfo;
 
       /* Write out dc huff tables */
       for (tableIndex = 0; tableIndex < dc_ix.length; tableIndex++) {
+        if (!hasSymbols(dc_count[tableIndex]))
+          continue;
         htInfo = dc_ix[tableIndex];
         os.write(htInfo);
         genOptimalTable(os, dc_count[tableIndex]);
@@ -5005,11 +5863,21 @@ public class LLJTran extends BasicJpegIo
 
       /* Write out ac huff tables */
       for (tableIndex = 0; tableIndex < ac_ix.length; tableIndex++) {
+        if (!hasSymbols(ac_count[tableIndex]))
+          continue;
         htInfo = 16 + ac_ix[tableIndex];
         os.write(htInfo);
         genOptimalTable(os, ac_count[tableIndex]);
       }
     }
+
+    /* true if any real symbol (not the pseudo-symbol 256) is counted */
+    private boolean hasSymbols(int freq[]) {
+      for (int i = 0; i < 256; i++)
+        if (freq[i] > 0)
+          return true;
+      return false;
+    }
   }
 
   private class RestartException extends Exception {
@@ -5028,7 +5896,6 @@ public class LLJTran extends BasicJpegIo
    * Internal variable indicating number of bytes read
    */
   protected int readcounter;
-  private boolean gatheringStats;
   // APP headers storage
   private int[][] app_store;
 
@@ -5064,13 +5931,22 @@ public class LLJTran extends BasicJpegIo
   private int[][] q_table;
   private int[] q_ix;
   private int[] q_prec;
-  private int[][][][][] dct_coefs;
   /**
-   * In all dct transform method tmp_dct is used as a temporary coeff array in
-   * addition to being used as a return value in case retainDct is true
+   * The dct coefficients: [heightMCU][widthMCU][mcusize][block]
+   * Every block is a single packed int array with one entry per stored coefficient (see packCoef()):
+   * the DC coefficient first, followed by the non-zero AC coefficients in zigzag order.
+   * Compared to separate value and position arrays per block this needs a third of the objects and about half the memory.
+   */
+  private int[][][][] dct_coefs;
+  /**
+   * In all dct transform method tmp_dct is used as a return value in case retainDct is true
    * meaning the original dct should not be written to.
    */
-  protected int[][] tmp_dct = new int[2][DCTSIZE2];
+  protected int[] tmp_dct = new int[DCTSIZE2];
+  /**
+   * temporary coefficient array in zigzag order (unpacked) used by the dct transform methods
+   */
+  private int[] tmp_coef = new int[DCTSIZE2];
 
   private Rectangle cropBounds = new Rectangle();
 
@@ -5078,6 +5954,8 @@ public class LLJTran extends BasicJpegIo
   private int[][][] enc_dc_matrix;
 
   private HuffGenerator huffGen;
+  private boolean parallelDecoding = true; // see setParallelDecoding()
+  private boolean parallelEncoding = true; // see setParallelEncoding()
   private ProgressCallback readProgressCallback, writeProgressCallback;
 
   /**